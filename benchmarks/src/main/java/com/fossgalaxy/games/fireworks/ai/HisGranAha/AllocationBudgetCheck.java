@@ -0,0 +1,245 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.ai.iggi.Utils;
+import com.fossgalaxy.games.fireworks.ai.mcts.IterationObject;
+import com.fossgalaxy.games.fireworks.ai.rule.logic.DeckUtils;
+import com.fossgalaxy.games.fireworks.state.Card;
+import com.fossgalaxy.games.fireworks.state.GameState;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks that the search loops of MCTS and HisGranAha stay within their allocation budgets.
+ *
+ * On the recorded mid-game position of each player count, a fixed number of search iterations is
+ * run phase by phase, and the bytes allocated by each phase are measured with the per-thread
+ * allocation counter of the JVM. The worst mean over the player counts is compared to the budget of
+ * the phase (in bytes per iteration); the phases over budget, or without a budget, are reported and
+ * the program exits with a non-zero status. The tables of the HisGranAha search are emptied before
+ * every iteration, so that each measured search does the same work whatever the iterations before.
+ *
+ * A budget can be overridden with a system property, e.g. {@code -Dallocation.mcts.rollout=40000},
+ * and {@code AllocationBudgetCheck baseline} prints the measured values with a small headroom, in
+ * the format of the defaults below, to set the budgets on the machine running the check and to
+ * update them after an intended change.
+ */
+public class AllocationBudgetCheck {
+    private static final int WARMUP_ITERATIONS = 2_000;
+    private static final int MEASURED_ITERATIONS = 2_000;
+    private static final double BASELINE_HEADROOM = 1.1;
+
+    // Budgets in bytes per iteration, by agent and phase. Compact rollouts are designed not to allocate at all; the
+    // budgets of the other phases come from the baseline mode, and are reported as missing until it has been run.
+    private static final Map<String, Long> DEFAULT_BUDGETS = new LinkedHashMap<>();
+
+    static {
+        DEFAULT_BUDGETS.put("compact.rollout", 0L);
+    }
+
+    public static void main(String[] args) {
+        boolean baseline = args.length > 0 && args[0].equals("baseline");
+        AllocationMeter meter = new AllocationMeter();
+
+        Map<String, Double> measured = new LinkedHashMap<>();
+        for (int playerCount = 2; playerCount <= 5; playerCount++) {
+            RecordedPositions.Position position = RecordedPositions.getMidGame(playerCount, RecordedPositions.DEFAULT_SEED);
+            measureMCTS(position, meter, measured);
+            measureCompactRollout(position, meter, measured);
+            measureHisGranAha(position, meter, measured);
+        }
+
+        if (baseline) {
+            for (Map.Entry<String, Double> entry : measured.entrySet()) {
+                System.out.println(String.format("DEFAULT_BUDGETS.put(\"%s\", %dL);", entry.getKey(),
+                        (long) Math.ceil(entry.getValue() * BASELINE_HEADROOM)));
+            }
+            return;
+        }
+
+        List<String> regressions = new ArrayList<>();
+        List<String> unmeasured = new ArrayList<>();
+        System.out.println("phase,bytesPerIteration,budget,status");
+        for (Map.Entry<String, Double> entry : measured.entrySet()) {
+            Long budget = Long.getLong("allocation." + entry.getKey(), DEFAULT_BUDGETS.get(entry.getKey()));
+            if (budget == null) {
+                System.out.println(String.format("%s,%.1f,,NO BUDGET", entry.getKey(), entry.getValue()));
+                unmeasured.add(entry.getKey());
+                continue;
+            }
+            boolean overBudget = entry.getValue() > budget;
+            System.out.println(String.format("%s,%.1f,%d,%s", entry.getKey(), entry.getValue(), budget, overBudget ? "OVER" : "ok"));
+            if (overBudget) {
+                regressions.add(entry.getKey());
+            }
+        }
+
+        if (!unmeasured.isEmpty()) {
+            System.err.println("No allocation budget for: " + String.join(", ", unmeasured)
+                    + " (run the baseline mode and add its output to DEFAULT_BUDGETS)");
+        }
+        if (!regressions.isEmpty()) {
+            System.err.println("Allocation budget exceeded by: " + String.join(", ", regressions));
+        }
+        if (!unmeasured.isEmpty() || !regressions.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Run the phases of MCTS iterations (determinize, select with its expansion, rollout and backup) one by one.
+     */
+    private static void measureMCTS(RecordedPositions.Position position, AllocationMeter meter, Map<String, Double> measured) {
+        int agentID = position.agentID;
+        GameState state = position.state;
+        int playerCount = state.getPlayerCount();
+        Map<Integer, List<Card>> possibleCards = DeckUtils.bindCard(agentID, state.getHand(agentID), state.getDeck().toList());
+        List<Integer> bindOrder = DeckUtils.bindOrder(possibleCards);
+
+        MCTS mcts = new MCTS();
+        MCTSNode root = new MCTSNode((agentID + playerCount - 1) % playerCount, null, Utils.generateAllActions(agentID, playerCount));
+        long[] bytes = new long[4];
+        for (int i = 0; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; i++) {
+            if (i == WARMUP_ITERATIONS) {
+                bytes = new long[4];
+            }
+
+            long start = meter.start();
+            GameState world = state.getCopy();
+            mcts.determinize(world, agentID, possibleCards, bindOrder);
+            world.getDeck().shuffle();
+            bytes[0] += meter.stop(start);
+
+            start = meter.start();
+            MCTSNode current = mcts.select(root, world, new IterationObject(agentID));
+            bytes[1] += meter.stop(start);
+
+            start = meter.start();
+            int score = mcts.rollout(world, current);
+            bytes[2] += meter.stop(start);
+
+            start = meter.start();
+            mcts.backup(current, score, 1, playerCount);
+            bytes[3] += meter.stop(start);
+        }
+
+        record(measured, "mcts.determinize", bytes[0]);
+        record(measured, "mcts.select", bytes[1]);
+        record(measured, "mcts.rollout", bytes[2]);
+        record(measured, "mcts.backup", bytes[3]);
+    }
+
+    /**
+     * Run compact rollouts from the same loaded state, which must not allocate at all.
+     */
+    private static void measureCompactRollout(RecordedPositions.Position position, AllocationMeter meter, Map<String, Double> measured) {
+        int agentID = position.agentID;
+        GameState world = position.state.getCopy();
+        Map<Integer, List<Card>> possibleCards = DeckUtils.bindCard(agentID, world.getHand(agentID), world.getDeck().toList());
+        MCTS.bindHand(world, agentID, DeckUtils.bindCards(DeckUtils.bindOrder(possibleCards), possibleCards));
+        world.getDeck().shuffle();
+
+        CompactState loaded = new CompactState();
+        loaded.load(world);
+        CompactState scratch = new CompactState();
+        int[] actions = new int[ActionIds.NUM_ACTIONS];
+        Random random = new Random(RecordedPositions.DEFAULT_SEED);
+        long bytes = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; i++) {
+            if (i == WARMUP_ITERATIONS) {
+                bytes = 0;
+            }
+
+            long start = meter.start();
+            scratch.copyFrom(loaded);
+            scratch.playRandomly(agentID, MCTS.DEFAULT_ROLLOUT_DEPTH, random, actions);
+            bytes += meter.stop(start);
+        }
+
+        record(measured, "compact.rollout", bytes);
+    }
+
+    /**
+     * Run HisGranAha iterations on a determinized world, measuring the legal moves and NNState of a node on their
+     * own. The network has the architecture of the shipped model with fresh weights, which allocates the same.
+     */
+    private static void measureHisGranAha(RecordedPositions.Position position, AllocationMeter meter, Map<String, Double> measured) {
+        int agentID = position.agentID;
+        GameState state = position.state;
+        Map<Integer, List<Card>> possibleCards = DeckUtils.bindCard(agentID, state.getHand(agentID), state.getDeck().toList());
+        List<Integer> bindOrder = DeckUtils.bindOrder(possibleCards);
+
+        NeuralNetwork nn = new NeuralNetwork();
+        nn.compile();
+        HisGranAha agent = new HisGranAha(new ModelRegistry(nn), HisGranAha.TIME_LIMIT);
+        agent.resetSearch();
+        long[] bytes = new long[3];
+        for (int i = 0; i < WARMUP_ITERATIONS + MEASURED_ITERATIONS; i++) {
+            if (i == WARMUP_ITERATIONS) {
+                bytes = new long[3];
+            }
+            GameState world = state.getCopy();
+            MCTS.bindHand(world, agentID, DeckUtils.bindCards(bindOrder, possibleCards));
+            world.getDeck().shuffle();
+            // Growing tables would charge their resizes to whichever iterations they land on.
+            agent.resetSearch();
+
+            long start = meter.start();
+            agent.getPlayerLegalMoves(world, agentID);
+            bytes[0] += meter.stop(start);
+
+            start = meter.start();
+            new NNState(world, 0);
+            bytes[1] += meter.stop(start);
+
+            start = meter.start();
+            agent.search(world, nn, agentID, agentID);
+            bytes[2] += meter.stop(start);
+        }
+
+        record(measured, "hisgranaha.legalMoves", bytes[0]);
+        record(measured, "hisgranaha.nnState", bytes[1]);
+        record(measured, "hisgranaha.search", bytes[2]);
+    }
+
+    /**
+     * Keep the worst mean over the player counts.
+     */
+    private static void record(Map<String, Double> measured, String phase, long bytes) {
+        measured.merge(phase, (double) bytes / MEASURED_ITERATIONS, Math::max);
+    }
+
+    /**
+     * Bytes allocated by the current thread, corrected for what reading the counter allocates itself.
+     */
+    private static class AllocationMeter {
+        private final com.sun.management.ThreadMXBean threads;
+        private final long threadId;
+        private final long overhead;
+
+        AllocationMeter() {
+            threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            threads.setThreadAllocatedMemoryEnabled(true);
+            threadId = Thread.currentThread().getId();
+
+            long lowest = Long.MAX_VALUE;
+            for (int i = 0; i < 1_000; i++) {
+                long start = threads.getThreadAllocatedBytes(threadId);
+                lowest = Math.min(lowest, threads.getThreadAllocatedBytes(threadId) - start);
+            }
+            overhead = lowest;
+        }
+
+        long start() {
+            return threads.getThreadAllocatedBytes(threadId);
+        }
+
+        long stop(long start) {
+            return Math.max(0, threads.getThreadAllocatedBytes(threadId) - start - overhead);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.ai.rule.logic.DeckUtils;
+import com.fossgalaxy.games.fireworks.state.Card;
+import com.fossgalaxy.games.fireworks.state.Deck;
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.Hand;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Positions shared by the benchmarks: the middle of a recorded game, determinized without any
+ * randomness so that every run (and every build) measures exactly the same work.
+ */
+public final class BenchmarkPositions {
+
+    private BenchmarkPositions() {
+    }
+
+    /**
+     * Get the recorded mid-game position of a player count.
+     *
+     * @param playerCount the number of players
+     * @return the position, as seen by the agent to move
+     */
+    public static RecordedPositions.Position getPosition(int playerCount) {
+        return RecordedPositions.getMidGame(playerCount, RecordedPositions.DEFAULT_SEED);
+    }
+
+    /**
+     * Fill the hand of the agent to move with the first possible card of each slot, taking the slots
+     * with fewer possible cards first.
+     *
+     * @param position the position to determinize
+     * @return a copy of the state of the position with the hand of the agent bound
+     */
+    public static GameState determinize(RecordedPositions.Position position) {
+        GameState world = position.state.getCopy();
+        Hand hand = world.getHand(position.agentID);
+        Deck deck = world.getDeck();
+        Map<Integer, List<Card>> possibleCards = DeckUtils.bindCard(position.agentID, hand, deck.toList());
+
+        for (int slot : DeckUtils.bindOrder(possibleCards)) {
+            List<Card> remaining = deck.toList();
+            for (Card card : possibleCards.get(slot)) {
+                if (remaining.contains(card)) {
+                    hand.bindCard(slot, card);
+                    deck.remove(card);
+                    break;
+                }
+            }
+        }
+        return world;
+    }
+}
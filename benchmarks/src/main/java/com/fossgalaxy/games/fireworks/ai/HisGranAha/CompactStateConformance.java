@@ -0,0 +1,168 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.GameRunner;
+import com.fossgalaxy.games.fireworks.ai.Agent;
+import com.fossgalaxy.games.fireworks.ai.AgentPlayer;
+import com.fossgalaxy.games.fireworks.ai.iggi.Utils;
+import com.fossgalaxy.games.fireworks.ai.rule.logic.DeckUtils;
+import com.fossgalaxy.games.fireworks.state.Card;
+import com.fossgalaxy.games.fireworks.state.CardColour;
+import com.fossgalaxy.games.fireworks.state.Deck;
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.Hand;
+import com.fossgalaxy.games.fireworks.state.actions.Action;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks that CompactState follows the same rules as Action.apply on the library GameState.
+ *
+ * Seeded random games are played; on every move, the state seen by the agent is determinized and
+ * random playouts are performed on both representations side by side, comparing them after every
+ * action. The first mismatch is reported and the program exits with a non-zero status.
+ */
+public class CompactStateConformance {
+    private static final CardColour[] COLOURS = { CardColour.RED, CardColour.BLUE, CardColour.GREEN, CardColour.ORANGE, CardColour.WHITE };
+
+    public static void main(String[] args) {
+        int numGames = 20;
+        int playoutsPerMove = 5;
+        long baseSeed = 1;
+
+        int checkedActions = 0;
+        for (int playerCount = 2; playerCount <= 5; playerCount++) {
+            for (int i = 0; i < numGames; i++) {
+                Random random = new Random(baseSeed + i);
+                CheckingAgent[] agents = new CheckingAgent[playerCount];
+                GameRunner runner = new GameRunner("compact-conformance", playerCount);
+                for (int seat = 0; seat < playerCount; seat++) {
+                    agents[seat] = new CheckingAgent(random, playoutsPerMove);
+                    runner.addNamedPlayer("checker" + seat, new AgentPlayer("checker" + seat, agents[seat]));
+                }
+                runner.playGame(baseSeed + i);
+
+                for (CheckingAgent agent : agents) {
+                    checkedActions += agent.checkedActions;
+                    if (agent.mismatch != null) {
+                        System.err.println(String.format("%d players, game %d: %s", playerCount, i, agent.mismatch));
+                        System.exit(1);
+                    }
+                }
+            }
+        }
+        System.out.println(String.format("CompactState matched Action.apply on %d actions", checkedActions));
+    }
+
+    /**
+     * Agent playing randomly, which checks the compact state against the library on each of its moves.
+     */
+    private static class CheckingAgent implements Agent {
+        private final Random random;
+        private final int playoutsPerMove;
+        private final CompactState compact;
+        private final int[] actions;
+        private int checkedActions;
+        private String mismatch;
+
+        CheckingAgent(Random random, int playoutsPerMove) {
+            this.random = random;
+            this.playoutsPerMove = playoutsPerMove;
+            this.compact = new CompactState();
+            this.actions = new int[ActionIds.NUM_ACTIONS];
+        }
+
+        @Override
+        public Action doMove(int agentID, GameState state) {
+            for (int i = 0; i < playoutsPerMove && mismatch == null; i++) {
+                GameState determinized = determinize(agentID, state);
+                compact.load(determinized);
+                checkPlayout(determinized, agentID);
+            }
+
+            List<Action> legalActions = new ArrayList<>(Utils.generateActions(agentID, state));
+            return legalActions.get(random.nextInt(legalActions.size()));
+        }
+
+        private void checkPlayout(GameState state, int firstPlayer) {
+            int playerCount = state.getPlayerCount();
+            int player = firstPlayer;
+            String difference = compare(state);
+
+            while (difference == null && !state.isGameOver()) {
+                // Both representations must agree on which actions are legal.
+                for (Action action : Utils.generateAllActions(player, playerCount)) {
+                    int actionId = ActionIds.getActionId(action, player, playerCount);
+                    if (action.isLegal(player, state) != compact.isLegal(player, actionId)) {
+                        difference = "legality of " + action + " for player " + player;
+                        break;
+                    }
+                }
+                if (difference != null) {
+                    break;
+                }
+
+                List<Action> legalActions = new ArrayList<>(Utils.generateActions(player, state));
+                Action action = legalActions.get(random.nextInt(legalActions.size()));
+                action.apply(player, state);
+                compact.apply(player, ActionIds.getActionId(action, player, playerCount));
+                checkedActions++;
+
+                difference = compare(state);
+                if (difference != null) {
+                    difference = "after " + action + " by player " + player + ": " + difference;
+                }
+                player = (player + 1) % playerCount;
+            }
+
+            if (difference != null) {
+                mismatch = difference;
+            }
+        }
+
+        private String compare(GameState state) {
+            if (state.isGameOver() != compact.isGameOver())
+                return "game over " + state.isGameOver() + " vs " + compact.isGameOver();
+            if (state.getScore() != compact.getScore())
+                return "score " + state.getScore() + " vs " + compact.getScore();
+            if (state.getLives() != compact.getLives())
+                return "lives " + state.getLives() + " vs " + compact.getLives();
+            if (state.getInfomation() != compact.getInformation())
+                return "information " + state.getInfomation() + " vs " + compact.getInformation();
+            if (state.getDeck().getCardsLeft() != compact.getDeckSize())
+                return "deck size " + state.getDeck().getCardsLeft() + " vs " + compact.getDeckSize();
+            for (int colour = 0; colour < COLOURS.length; colour++) {
+                if (state.getTableValue(COLOURS[colour]) != compact.getTableValue(colour))
+                    return "table " + COLOURS[colour];
+            }
+            for (int player = 0; player < state.getPlayerCount(); player++) {
+                Hand hand = state.getHand(player);
+                for (int slot = 0; slot < hand.getSize(); slot++) {
+                    Card card = hand.getCard(slot);
+                    int cardType = card == null ? CompactState.NO_CARD : ZobristHash.getCardType(card);
+                    if (cardType != compact.getCard(player, slot))
+                        return "card of player " + player + " in slot " + slot;
+                }
+            }
+            return null;
+        }
+
+        private GameState determinize(int agentID, GameState state) {
+            GameState copy = state.getCopy();
+            Map<Integer, List<Card>> possibleCards = DeckUtils.bindCard(agentID, state.getHand(agentID), state.getDeck().toList());
+            Map<Integer, Card> cardsInHand = DeckUtils.bindCards(DeckUtils.bindOrder(possibleCards), possibleCards);
+
+            Deck deck = copy.getDeck();
+            Hand hand = copy.getHand(agentID);
+            for (int slot = 0; slot < hand.getSize(); slot++) {
+                Card card = cardsInHand.get(slot);
+                hand.bindCard(slot, card);
+                deck.remove(card);
+            }
+            deck.shuffle();
+            return copy;
+        }
+    }
+}
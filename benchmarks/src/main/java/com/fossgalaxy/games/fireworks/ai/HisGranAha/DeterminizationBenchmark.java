@@ -0,0 +1,88 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.ai.rule.logic.DeckUtils;
+import com.fossgalaxy.games.fireworks.state.Card;
+import com.fossgalaxy.games.fireworks.state.GameState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of determinization: the DeckUtils steps done once per move and once per world, and
+ * the whole determinization of a world through DeckUtils or through the BeliefTracker.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DeterminizationBenchmark {
+
+    @Param({ "2", "3", "4", "5" })
+    public int playerCount;
+
+    private GameState state;
+    private int agentID;
+    private List<Card> deck;
+    private Map<Integer, List<Card>> possibleCards;
+    private List<Integer> bindOrder;
+    private BeliefTracker beliefTracker;
+    private Random random;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RecordedPositions.Position position = BenchmarkPositions.getPosition(playerCount);
+        state = position.state;
+        agentID = position.agentID;
+        deck = state.getDeck().toList();
+        possibleCards = DeckUtils.bindCard(agentID, state.getHand(agentID), deck);
+        bindOrder = DeckUtils.bindOrder(possibleCards);
+        beliefTracker = new BeliefTracker();
+        beliefTracker.update(agentID, state);
+        random = new Random(RecordedPositions.DEFAULT_SEED);
+    }
+
+    @Benchmark
+    public Map<Integer, List<Card>> bindCard() {
+        return DeckUtils.bindCard(agentID, state.getHand(agentID), deck);
+    }
+
+    @Benchmark
+    public List<Integer> bindOrder() {
+        return DeckUtils.bindOrder(possibleCards);
+    }
+
+    @Benchmark
+    public Map<Integer, Card> bindCards() {
+        return DeckUtils.bindCards(bindOrder, possibleCards);
+    }
+
+    @Benchmark
+    public GameState determinizeWorld() {
+        GameState world = state.getCopy();
+        MCTS.bindHand(world, agentID, DeckUtils.bindCards(bindOrder, possibleCards));
+        return world;
+    }
+
+    @Benchmark
+    public GameState determinizeWorldWithBeliefs() {
+        GameState world = state.getCopy();
+        beliefTracker.bindHand(world, random);
+        return world;
+    }
+}
@@ -0,0 +1,76 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.GameRunner;
+import com.fossgalaxy.games.fireworks.GameStats;
+import com.fossgalaxy.games.fireworks.ai.AgentPlayer;
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.actions.Action;
+import com.fossgalaxy.stats.BasicStats;
+import com.fossgalaxy.stats.StatsSummary;
+
+/**
+ * Measures how reusing each determinization for a batch of iterations trades throughput against
+ * strength.
+ *
+ * For every batch size, MCTS agents play the same seeded games (every seat uses the batch size
+ * being measured) and the average score and iterations per second are printed. Every move is also
+ * searched again by an independent reference agent determinizing on every iteration, and the share
+ * of moves on which both agree shows how much the decisions drift away from the unbiased search.
+ * The agreement of batch size 1 is that of two unbiased searches, the noise floor the other batch
+ * sizes are compared to.
+ */
+public class DeterminizationReuseBenchmark {
+
+    public static void main(String[] args) {
+        int numPlayers = 4;
+        int numGames = 10;
+        int budget = 250;
+        long baseSeed = 42;
+        int[] batchSizes = { 1, 2, 4, 8, 16 };
+
+        System.out.println("batch,avgScore,iterationsPerSecond,agreement");
+        for (int batchSize : batchSizes) {
+            StatsSummary scores = new BasicStats();
+            StatsSummary iterationRates = new BasicStats();
+            StatsSummary agreement = new BasicStats();
+
+            for (int i = 0; i < numGames; i++) {
+                GameRunner runner = new GameRunner("reuse-benchmark", numPlayers);
+                for (int seat = 0; seat < numPlayers; seat++) {
+                    MCTS agent = buildAgent(budget, batchSize, iterationRates, agreement);
+                    runner.addNamedPlayer("mcts" + seat, new AgentPlayer("mcts" + seat, agent));
+                }
+                GameStats stats = runner.playGame(baseSeed + i);
+                scores.add(stats.score);
+            }
+
+            System.out.println(String.format("%d,%f,%f,%f", batchSize, scores.getMean(), iterationRates.getMean(),
+                    agreement.getMean()));
+        }
+    }
+
+    private static MCTS buildAgent(int budget, int batchSize, StatsSummary iterationRates, StatsSummary agreement) {
+        MCTS reference = buildReference(budget);
+        MCTS agent = new MCTS(MCTS.DEFAULT_ITERATIONS, MCTS.NO_LIMIT, MCTS.NO_LIMIT) {
+            @Override
+            public Action doMove(int agentID, GameState state) {
+                long startTime = System.nanoTime();
+                Action action = super.doMove(agentID, state);
+                double seconds = (System.nanoTime() - startTime) / 1e9;
+                iterationRates.add(getLastIterations() / seconds);
+
+                agreement.add(action.equals(reference.doMove(agentID, state)) ? 1 : 0);
+                return action;
+            }
+        };
+        agent.setMoveTime(budget);
+        agent.setDeterminizationBatch(batchSize);
+        return agent;
+    }
+
+    private static MCTS buildReference(int budget) {
+        MCTS reference = new MCTS(MCTS.DEFAULT_ITERATIONS, MCTS.NO_LIMIT, MCTS.NO_LIMIT);
+        reference.setMoveTime(budget);
+        return reference;
+    }
+}
@@ -0,0 +1,77 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.GameState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the search of HisGranAha and of the neural network calls it is made of.
+ *
+ * The network is built from the same architecture as the shipped model with freshly initialised
+ * weights, so that the benchmarks do not depend on the model files: inference costs the same.
+ * The search tables are kept across calls, as within a move.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HisGranAhaBenchmark {
+
+    @Param({ "2", "3", "4", "5" })
+    public int playerCount;
+
+    private HisGranAha agent;
+    private NeuralNetwork nn;
+    private GameState world;
+    private int agentID;
+    private NNState nnState;
+    private double[] features;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RecordedPositions.Position position = BenchmarkPositions.getPosition(playerCount);
+        agentID = position.agentID;
+        world = BenchmarkPositions.determinize(position);
+
+        nn = new NeuralNetwork();
+        nn.compile();
+        agent = new HisGranAha(new ModelRegistry(nn), HisGranAha.TIME_LIMIT);
+        agent.resetSearch();
+        nnState = new NNState(world, 0);
+        features = nnState.getNormalizedFlattenedRepresentation();
+    }
+
+    @Benchmark
+    public double search() {
+        return agent.search(world.getCopy(), nn, agentID, agentID);
+    }
+
+    @Benchmark
+    public NNState createNNState() {
+        return new NNState(world, 0);
+    }
+
+    @Benchmark
+    public double[] getNormalizedFlattenedRepresentation() {
+        return nnState.getNormalizedFlattenedRepresentation();
+    }
+
+    @Benchmark
+    public NeuralNetwork.NeuralNetworkOutput predict() {
+        return nn.predict(features);
+    }
+}
@@ -0,0 +1,93 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.ai.iggi.Utils;
+import com.fossgalaxy.games.fireworks.ai.mcts.IterationObject;
+import com.fossgalaxy.games.fireworks.state.GameState;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the phases of an MCTS iteration, on the mid-game position of each player count.
+ *
+ * The tree is grown by a fixed number of iterations before measuring. Select and the full
+ * iteration keep growing it, as in a real search, and every benchmark that modifies the state works
+ * on a copy of the determinized world, whose cost is measured on its own by copyWorld.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MCTSBenchmark {
+    private static final int TREE_ITERATIONS = 2_000;
+
+    @Param({ "2", "3", "4", "5" })
+    public int playerCount;
+
+    private MCTS mcts;
+    private MCTSNode root;
+    private GameState world;
+    private int agentID;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RecordedPositions.Position position = BenchmarkPositions.getPosition(playerCount);
+        agentID = position.agentID;
+        world = BenchmarkPositions.determinize(position);
+
+        mcts = new MCTS();
+        root = newRoot();
+        for (int i = 0; i < TREE_ITERATIONS; i++) {
+            mcts.runIteration(root, world.getCopy(), agentID);
+        }
+    }
+
+    @Benchmark
+    public GameState copyWorld() {
+        return world.getCopy();
+    }
+
+    @Benchmark
+    public MCTSNode select() {
+        return mcts.select(root, world.getCopy(), new IterationObject(agentID));
+    }
+
+    @Benchmark
+    public MCTSNode expand() {
+        // Expanding does not modify the state, but it does modify the node, so each call gets a new one.
+        return mcts.expand(newRoot(), world);
+    }
+
+    @Benchmark
+    public int rollout() {
+        return mcts.rollout(world.getCopy(), root);
+    }
+
+    @Benchmark
+    public MCTSNode iteration() {
+        mcts.runIteration(root, world.getCopy(), agentID);
+        return root;
+    }
+
+    @Benchmark
+    public MCTSNode getUCTNode() {
+        return root.getUCTNode(world, false);
+    }
+
+    private MCTSNode newRoot() {
+        return new MCTSNode((agentID + playerCount - 1) % playerCount, null, Utils.generateAllActions(agentID, playerCount));
+    }
+}
@@ -0,0 +1,99 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.GameRunner;
+import com.fossgalaxy.games.fireworks.GameStats;
+import com.fossgalaxy.games.fireworks.ai.AgentPlayer;
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.actions.Action;
+import com.fossgalaxy.stats.BasicStats;
+import com.fossgalaxy.stats.StatsSummary;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Compares plain MCTS against MCTS with progressive widening.
+ *
+ * For every time budget, both variants play the same seeded games (every seat is the variant being
+ * measured) and the average score, mean node depth and maximum tree depth per move are printed.
+ */
+public class ProgressiveWideningBenchmark {
+
+    public static void main(String[] args) {
+        int numPlayers = 5;
+        int numGames = 10;
+        long baseSeed = 42;
+        int[] budgets = { 100, 250, 500, 1000 };
+
+        System.out.println("budget,variant,avgScore,meanDepth,maxDepth");
+        for (int budget : budgets) {
+            for (boolean widening : new boolean[] { false, true }) {
+                StatsSummary scores = new BasicStats();
+                StatsSummary meanDepths = new BasicStats();
+                StatsSummary maxDepths = new BasicStats();
+
+                for (int i = 0; i < numGames; i++) {
+                    GameRunner runner = new GameRunner("widening-benchmark", numPlayers);
+                    for (int seat = 0; seat < numPlayers; seat++) {
+                        MCTS agent = buildAgent(budget, widening, meanDepths, maxDepths);
+                        runner.addNamedPlayer("mcts" + seat, new AgentPlayer("mcts" + seat, agent));
+                    }
+                    GameStats stats = runner.playGame(baseSeed + i);
+                    scores.add(stats.score);
+                }
+
+                System.out.println(String.format("%d,%s,%f,%f,%f", budget, widening ? "widening" : "uct",
+                        scores.getMean(), meanDepths.getMean(), maxDepths.getMean()));
+            }
+        }
+    }
+
+    private static MCTS buildAgent(int budget, boolean widening, StatsSummary meanDepths, StatsSummary maxDepths) {
+        MCTS agent = new MCTS(MCTS.DEFAULT_ITERATIONS, MCTS.NO_LIMIT, MCTS.NO_LIMIT) {
+            @Override
+            public Action doMove(int agentID, GameState state) {
+                Action action = super.doMove(agentID, state);
+                recordDepths(getLastRoot(), meanDepths, maxDepths);
+                return action;
+            }
+        };
+        agent.setMoveTime(budget);
+        if (widening) {
+            agent.setProgressiveWidening(MCTS.DEFAULT_WIDENING_CONSTANT, MCTS.DEFAULT_WIDENING_EXPONENT, new HeuristicActionPrior());
+        }
+        return agent;
+    }
+
+    /**
+     * Walk the tree (or DAG) of a search and record the mean depth of its nodes and its maximum depth.
+     */
+    private static void recordDepths(MCTSNode root, StatsSummary meanDepths, StatsSummary maxDepths) {
+        if (root == null) {
+            return;
+        }
+
+        Set<MCTSNode> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<MCTSNode> toVisit = new ArrayDeque<>();
+        toVisit.push(root);
+        long depthSum = 0;
+        int maxDepth = 0;
+
+        while (!toVisit.isEmpty()) {
+            MCTSNode node = toVisit.pop();
+            if (!seen.add(node)) {
+                continue;
+            }
+            depthSum += node.getDepth();
+            maxDepth = Math.max(maxDepth, node.getDepth());
+            for (MCTSNode child : node.getChildren()) {
+                toVisit.push(child);
+            }
+        }
+
+        meanDepths.add((double) depthSum / seen.size());
+        maxDepths.add(maxDepth);
+    }
+}
@@ -0,0 +1,111 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.GameRunner;
+import com.fossgalaxy.games.fireworks.ai.Agent;
+import com.fossgalaxy.games.fireworks.ai.AgentPlayer;
+import com.fossgalaxy.games.fireworks.ai.iggi.Utils;
+import com.fossgalaxy.games.fireworks.state.CardColour;
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.Hand;
+import com.fossgalaxy.games.fireworks.state.actions.Action;
+import com.fossgalaxy.games.fireworks.state.actions.PlayCard;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible game positions, for benchmarks and regression checks.
+ *
+ * A game is played from a seeded deck by agents that play the cards they know to be playable and
+ * otherwise pick a tell or a discard with a seeded random generator, the legal actions being sorted
+ * by action Id first. Each state seen by an agent on its turn is recorded, so the same seed always
+ * gives the same positions.
+ */
+public class RecordedPositions {
+    public static final long DEFAULT_SEED = 42;
+
+    /**
+     * A state of the game as seen by the agent to move (whose own cards are unknown).
+     */
+    public static class Position {
+        public final int agentID;
+        public final GameState state;
+
+        public Position(int agentID, GameState state) {
+            this.agentID = agentID;
+            this.state = state;
+        }
+    }
+
+    /**
+     * Record the positions of a game.
+     *
+     * @param playerCount the number of players
+     * @param seed        the seed of the deck and of the agents
+     * @return the positions of the game, in the order they were played
+     */
+    public static List<Position> record(int playerCount, long seed) {
+        List<Position> positions = new ArrayList<>();
+        Random random = new Random(seed);
+        GameRunner runner = new GameRunner("recorded-positions", playerCount);
+        for (int seat = 0; seat < playerCount; seat++) {
+            runner.addNamedPlayer("recorder" + seat, new AgentPlayer("recorder" + seat, new RecordingAgent(positions, random)));
+        }
+        runner.playGame(seed);
+        return positions;
+    }
+
+    /**
+     * Get a position from the middle of a recorded game, with cards left in the deck and a partly built table.
+     *
+     * @param playerCount the number of players
+     * @param seed        the seed of the deck and of the agents
+     * @return the position halfway through the game
+     */
+    public static Position getMidGame(int playerCount, long seed) {
+        List<Position> positions = record(playerCount, seed);
+        return positions.get(positions.size() / 2);
+    }
+
+    /**
+     * Agent playing its known playable cards, and otherwise a random tell or discard.
+     */
+    private static class RecordingAgent implements Agent {
+        private final List<Position> positions;
+        private final Random random;
+
+        RecordingAgent(List<Position> positions, Random random) {
+            this.positions = positions;
+            this.random = random;
+        }
+
+        @Override
+        public Action doMove(int agentID, GameState state) {
+            positions.add(new Position(agentID, state.getCopy()));
+
+            Hand hand = state.getHand(agentID);
+            for (int slot = 0; slot < hand.getSize(); slot++) {
+                CardColour colour = hand.getKnownColour(slot);
+                Integer value = hand.getKnownValue(slot);
+                if (colour != null && value != null && state.getTableValue(colour) + 1 == value) {
+                    return new PlayCard(slot);
+                }
+            }
+
+            int playerCount = state.getPlayerCount();
+            List<Action> actions = new ArrayList<>();
+            for (Action action : Utils.generateActions(agentID, state)) {
+                if (!(action instanceof PlayCard)) {
+                    actions.add(action);
+                }
+            }
+            if (actions.isEmpty()) {
+                actions.addAll(Utils.generateActions(agentID, state));
+            }
+            actions.sort(Comparator.comparingInt(action -> ActionIds.getActionId(action, agentID, playerCount)));
+            return actions.get(random.nextInt(actions.size()));
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.GameRunner;
+import com.fossgalaxy.games.fireworks.GameStats;
+import com.fossgalaxy.games.fireworks.ai.Agent;
+import com.fossgalaxy.games.fireworks.ai.AgentPlayer;
+import com.fossgalaxy.games.fireworks.ai.Tournament;
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.actions.Action;
+import com.fossgalaxy.games.fireworks.utils.AgentUtils;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Measures how the strength of the agents grows with their search budget, so that a speedup can be
+ * checked to translate into a better score.
+ *
+ * Every agent configuration plays the same seeded games (every seat is the configuration being
+ * measured) at several time budgets and at several fixed numbers of iterations per move. For each
+ * budget, the mean score with its 95% confidence interval, the iterations per second, the mean tree
+ * size and the mean number of neural network calls per move are written as a CSV line, giving one
+ * score-versus-budget curve per configuration.
+ *
+ * Usage: {@code StrengthBenchmark [label [output.csv [games]]]} runs the suite, and
+ * {@code StrengthBenchmark compare base.csv candidate.csv} compares the results of two builds.
+ * Games are played one at a time, since parallel games would compete for the time budgets. Scores
+ * vary a lot from one deal to the next, so a few hundred games per budget are needed before the
+ * confidence intervals are narrow enough to tell two builds apart; fewer games can be asked for a
+ * quick check.
+ */
+public class StrengthBenchmark {
+    private static final String[] AGENTS = { "mctsND", "HisGranAha" };
+    private static final int[] TIME_BUDGETS = { 100, 250, 500, 1000, 2000 };
+    private static final int[] ITERATION_BUDGETS = { 500, 2000, 8000 };
+    // Time per move given to the fixed iteration budgets, so that only the iterations limit the search.
+    private static final int ITERATION_BUDGET_TIME = 60_000;
+    private static final int NUM_PLAYERS = 4;
+    private static final int DEFAULT_GAMES = 300;
+    private static final long BASE_SEED = 42;
+
+    private static final String HEADER = "label,agent,budgetType,budget,games,meanScore,ci95,iterationsPerSecond,meanTreeSize,meanNNCalls";
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 3 && args[0].equals("compare")) {
+            compare(args[1], args[2]);
+            return;
+        }
+
+        String label = args.length > 0 ? args[0] : "current";
+        String outputPath = args.length > 1 ? args[1] : "strength_" + label + ".csv";
+        int numGames = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_GAMES;
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(outputPath), StandardCharsets.UTF_8))) {
+            writer.println(HEADER);
+            System.out.println(HEADER);
+            for (String agentName : AGENTS) {
+                for (int budget : TIME_BUDGETS) {
+                    String line = label + "," + measure(agentName, "time", budget, numGames);
+                    writer.println(line);
+                    writer.flush();
+                    System.out.println(line);
+                }
+                for (int budget : ITERATION_BUDGETS) {
+                    String line = label + "," + measure(agentName, "iterations", budget, numGames);
+                    writer.println(line);
+                    writer.flush();
+                    System.out.println(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Play the seeded games of a configuration at a budget.
+     *
+     * @return the CSV fields of the measurements, after the label
+     */
+    private static String measure(String agentName, String budgetType, int budget, int numGames) {
+        List<Integer> scores = new ArrayList<>();
+        MoveStats moveStats = new MoveStats();
+        for (int i = 0; i < numGames; i++) {
+            GameRunner runner = new GameRunner("strength-benchmark", NUM_PLAYERS);
+            for (int seat = 0; seat < NUM_PLAYERS; seat++) {
+                Agent agent = buildAgent(agentName, budgetType, budget);
+                runner.addNamedPlayer(agentName + seat, new AgentPlayer(agentName + seat, new MeasuredAgent(agent, moveStats)));
+            }
+            GameStats stats = runner.playGame(BASE_SEED + i);
+            scores.add(stats.score);
+        }
+
+        Tournament.Summary summary = new Tournament.Summary(scores);
+        return String.format(Locale.ROOT, "%s,%s,%d,%d,%f,%f,%f,%f,%f", agentName, budgetType, budget, summary.games,
+                summary.mean, summary.confidenceInterval, moveStats.getIterationsPerSecond(),
+                moveStats.getMeanTreeSize(), moveStats.getMeanNNCalls());
+    }
+
+    private static Agent buildAgent(String agentName, String budgetType, int budget) {
+        Agent agent = AgentUtils.buildAgent(agentName);
+        boolean fixedIterations = budgetType.equals("iterations");
+        int moveTime = fixedIterations ? ITERATION_BUDGET_TIME : budget;
+        int maxIterations = fixedIterations ? budget : 0;
+
+        if (agent instanceof MCTS) {
+            ((MCTS) agent).setMoveTime(moveTime);
+            ((MCTS) agent).setMaxIterations(maxIterations);
+        } else if (agent instanceof HisGranAha) {
+            ((HisGranAha) agent).setMoveTime(moveTime);
+            ((HisGranAha) agent).setMaxIterations(maxIterations);
+        } else {
+            throw new IllegalArgumentException("No search budget to set on " + agentName);
+        }
+        return agent;
+    }
+
+    /**
+     * Compare the results of two builds, budget by budget. A difference of score is flagged when it
+     * is larger than the combined 95% confidence intervals.
+     */
+    private static void compare(String basePath, String candidatePath) throws IOException {
+        Map<String, String[]> base = readResults(basePath);
+        Map<String, String[]> candidate = readResults(candidatePath);
+
+        System.out.println("agent,budgetType,budget,baseScore,candidateScore,scoreDelta,significant,speedRatio");
+        for (Map.Entry<String, String[]> entry : candidate.entrySet()) {
+            String[] before = base.get(entry.getKey());
+            if (before == null) {
+                continue;
+            }
+            String[] after = entry.getValue();
+            double scoreDelta = Double.parseDouble(after[5]) - Double.parseDouble(before[5]);
+            double combinedInterval = Math.hypot(Double.parseDouble(after[6]), Double.parseDouble(before[6]));
+            double baseSpeed = Double.parseDouble(before[7]);
+            double speedRatio = baseSpeed == 0 ? 0 : Double.parseDouble(after[7]) / baseSpeed;
+            System.out.println(String.format(Locale.ROOT, "%s,%s,%s,%s,%s,%+f,%b,%f", after[1], after[2], after[3],
+                    before[5], after[5], scoreDelta, Math.abs(scoreDelta) > combinedInterval, speedRatio));
+        }
+    }
+
+    private static Map<String, String[]> readResults(String path) throws IOException {
+        Map<String, String[]> results = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(Paths.get(path), StandardCharsets.UTF_8)) {
+            String[] fields = line.split(",");
+            if (line.equals(HEADER) || fields.length < 10) {
+                continue;
+            }
+            results.put(fields[1] + "," + fields[2] + "," + fields[3], fields);
+        }
+        return results;
+    }
+
+    /**
+     * Search statistics accumulated over the moves of a configuration.
+     */
+    private static class MoveStats {
+        private long moves;
+        private long iterations;
+        private long nanos;
+        private long treeSize;
+        private long nnCalls;
+
+        double getIterationsPerSecond() {
+            return nanos == 0 ? 0 : iterations / (nanos / 1e9);
+        }
+
+        double getMeanTreeSize() {
+            return moves == 0 ? 0 : (double) treeSize / moves;
+        }
+
+        double getMeanNNCalls() {
+            return moves == 0 ? 0 : (double) nnCalls / moves;
+        }
+    }
+
+    /**
+     * Agent recording the search statistics of each move of the agent it wraps.
+     */
+    private static class MeasuredAgent implements Agent {
+        private final Agent agent;
+        private final MoveStats moveStats;
+
+        MeasuredAgent(Agent agent, MoveStats moveStats) {
+            this.agent = agent;
+            this.moveStats = moveStats;
+        }
+
+        @Override
+        public void receiveID(int agentID, String[] names) {
+            agent.receiveID(agentID, names);
+        }
+
+        @Override
+        public Action doMove(int agentID, GameState state) {
+            long nnCallsBefore = agent instanceof HisGranAha ? ((HisGranAha) agent).getNNCalls() : 0;
+            long start = System.nanoTime();
+            Action action = agent.doMove(agentID, state);
+            moveStats.nanos += System.nanoTime() - start;
+            moveStats.moves++;
+
+            if (agent instanceof MCTS) {
+                moveStats.iterations += ((MCTS) agent).getLastIterations();
+                moveStats.treeSize += ((MCTS) agent).getNodeCount();
+            } else if (agent instanceof HisGranAha) {
+                moveStats.iterations += ((HisGranAha) agent).getLastIterations();
+                moveStats.treeSize += ((HisGranAha) agent).getTreeSize();
+                moveStats.nnCalls += ((HisGranAha) agent).getNNCalls() - nnCallsBefore;
+            }
+            return action;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.actions.Action;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of recording the telemetry of a search, comparing a whole move of MCTS and of HisGranAha
+ * with and without a listener.
+ *
+ * Every move runs a fixed number of iterations with a time budget large enough never to stop the
+ * search, so both settings do the same work apart from the telemetry. The listener only adds up
+ * the iterations it is told about, leaving out the cost of writing the telemetry.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TelemetryBenchmark {
+    private static final int MCTS_ITERATIONS = 2_000;
+    private static final int HIS_GRAN_AHA_ITERATIONS = 100;
+    private static final int MOVE_TIME = 60_000;
+
+    @Param({ "2", "5" })
+    public int playerCount;
+
+    @Param({ "false", "true" })
+    public boolean telemetry;
+
+    private MCTS mcts;
+    private HisGranAha hisGranAha;
+    private GameState state;
+    private int agentID;
+    private long recordedIterations;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        RecordedPositions.Position position = BenchmarkPositions.getPosition(playerCount);
+        agentID = position.agentID;
+        state = position.state;
+        TelemetryListener listener = telemetry ? move -> recordedIterations += move.iterations : null;
+
+        mcts = new MCTS();
+        mcts.setMoveTime(MOVE_TIME);
+        mcts.setMaxIterations(MCTS_ITERATIONS);
+        mcts.setTelemetryListener(listener);
+
+        NeuralNetwork nn = new NeuralNetwork();
+        nn.compile();
+        hisGranAha = new HisGranAha(new ModelRegistry(nn), MOVE_TIME);
+        hisGranAha.setMaxIterations(HIS_GRAN_AHA_ITERATIONS);
+        hisGranAha.setTelemetryListener(listener);
+    }
+
+    @Benchmark
+    public Action mctsMove() {
+        return mcts.doMove(agentID, state.getCopy());
+    }
+
+    @Benchmark
+    public Action hisGranAhaMove() {
+        return hisGranAha.doMove(agentID, state.getCopy());
+    }
+}
@@ -0,0 +1,41 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Reports how often the transposition table of MCTS finds an existing node when expanding.
+ *
+ * Every position of a recorded game is searched for a fixed number of iterations with
+ * transpositions turned on, and the lookups and hits counted by the telemetry of each move are
+ * added up by player count.
+ *
+ * Usage: {@code java -cp target/benchmarks.jar com.fossgalaxy.games.fireworks.ai.HisGranAha.TranspositionHitRate [iterations]}
+ */
+public class TranspositionHitRate {
+    private static final int DEFAULT_ITERATIONS = 5_000;
+
+    public static void main(String[] args) {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+
+        System.out.println("playerCount,moves,lookupsPerMove,hitRate,nodesPerMove");
+        for (int playerCount = 2; playerCount <= 5; playerCount++) {
+            long[] totals = new long[3];
+            List<RecordedPositions.Position> positions = RecordedPositions.record(playerCount, RecordedPositions.DEFAULT_SEED);
+            for (RecordedPositions.Position position : positions) {
+                MCTS mcts = MCTS.buildMCTSNDTransposition();
+                mcts.setMaxIterations(iterations);
+                mcts.setTelemetryListener(telemetry -> {
+                    totals[0] += telemetry.cacheLookups;
+                    totals[1] += telemetry.cacheHits;
+                    totals[2] += telemetry.nodesAllocated;
+                });
+                mcts.doMove(position.agentID, position.state.getCopy());
+            }
+
+            int moves = positions.size();
+            System.out.println(String.format(Locale.ROOT, "%d,%d,%.1f,%.4f,%.1f", playerCount, moves, (double) totals[0] / moves,
+                    totals[0] == 0 ? 0 : (double) totals[1] / totals[0], (double) totals[2] / moves));
+        }
+    }
+}
@@ -1,53 +1,39 @@
 package com.fossgalaxy.games.fireworks.ai;
 
-import com.fossgalaxy.games.fireworks.GameRunner;
-import com.fossgalaxy.games.fireworks.GameStats;
-import com.fossgalaxy.games.fireworks.players.Player;
-import com.fossgalaxy.games.fireworks.utils.AgentUtils;
-import com.fossgalaxy.stats.BasicStats;
-import com.fossgalaxy.stats.StatsSummary;
-
-import java.util.Random;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Game runner for testing.
  *
- * This will run a bunch of games with your agent so you can see how it does.
+ * This will run a bunch of games with your agent so you can see how it does. The games are seeded,
+ * so two runs play exactly the same games. They are played one at a time by default: our agent
+ * searches until its time budget runs out, so games running side by side would compete for the
+ * cores and weaken it. More threads can be used when there are cores to spare for every game.
  */
 public class App 
 {
-    public static void main( String[] args )
+    public static void main( String[] args ) throws IOException
     {
         int numPlayers = 5;
-        int numGames = 1;
+        int numGames = 6;
         String[] agentOthers = { "iggi", "piers", "flawed", "outer", "vdb-paper", "legal_random"};
         String agentOurs = "HisGranAha";
+        int threads = 1;
 
-        Random random = new Random();
-        StatsSummary statsSummary = new BasicStats();
-
-        for (int i = 0; i < numGames; i++) {
-            for (int j = 0; j < agentOthers.length; j++) {
-                GameRunner runner = new GameRunner("test-game", numPlayers);
-                int positionOurs = random.nextInt(numPlayers);
-                for (int k = 0; k < numPlayers; k++) {
-                    if (k == positionOurs) {
-                        Player player = new AgentPlayer(agentOurs, AgentUtils.buildAgent(agentOurs));
-                        runner.addNamedPlayer(agentOurs, player);
-                    } else {
-                        Player player = new AgentPlayer(agentOthers[j], AgentUtils.buildAgent(agentOthers[j]));
-                        runner.addNamedPlayer(agentOthers[j], player);
-                    }
-                }
-                GameStats stats = runner.playGame(random.nextLong());
-                statsSummary.add(stats.score);
-            }
+        List<Tournament.Entrant> opponents = new ArrayList<>();
+        for (String agentOther : agentOthers) {
+            opponents.add(Tournament.Entrant.of(agentOther));
         }
 
+        // each game fills the other seats with one of the opponents, taking them in turn
+        Tournament tournament = new Tournament(numPlayers, Tournament.DEFAULT_SEED, threads);
+        Tournament.Results results = tournament.run(Tournament.Entrant.of(agentOurs), opponents, numGames);
+
         //print out the stats
-        System.out.println(String.format("Our agent: Avg: %f, min: %f, max: %f",
-                statsSummary.getMean(),
-                statsSummary.getMin(),
-                statsSummary.getMax()));
+        results.print();
+        results.writeCsv("app_games.csv");
+        results.writeJson("app_summary.json");
     }
 }
@@ -0,0 +1,117 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.Card;
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.Hand;
+import com.fossgalaxy.games.fireworks.state.actions.Action;
+import com.fossgalaxy.games.fireworks.state.actions.DiscardCard;
+import com.fossgalaxy.games.fireworks.state.actions.PlayCard;
+import com.fossgalaxy.games.fireworks.state.actions.TellColour;
+import com.fossgalaxy.games.fireworks.state.actions.TellValue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Groups the actions available in a state into equivalence classes, so that the search only needs
+ * one child per class.
+ *
+ * Tells are grouped by the player receiving them and the mask of the slots they touch: in a given
+ * state, two tells touching exactly the same cards of the same player are treated as the same move.
+ * Every play and discard is a class of its own.
+ */
+public final class ActionAbstraction {
+    private static final int TELL_CLASS = 1 << 20;
+    private static final int DISCARD_CLASS = 2 << 20;
+    private static final int PLAY_CLASS = 3 << 20;
+
+    private ActionAbstraction() {
+    }
+
+    /**
+     * Get the key of the equivalence class of an action.
+     *
+     * @param action the action to classify
+     * @param state  the state the action would be applied to
+     * @return a key that is equal for two actions if and only if they are in the same class
+     */
+    public static int getClassKey(Action action, GameState state) {
+        if (action instanceof DiscardCard) {
+            return DISCARD_CLASS | ((DiscardCard) action).slot;
+        }
+        if (action instanceof PlayCard) {
+            return PLAY_CLASS | ((PlayCard) action).slot;
+        }
+
+        int player;
+        int mask = 0;
+        if (action instanceof TellColour) {
+            TellColour tell = (TellColour) action;
+            player = tell.player;
+            Hand hand = state.getHand(player);
+            for (int slot = 0; slot < hand.getSize(); slot++) {
+                Card card = hand.getCard(slot);
+                if (card != null && card.colour == tell.colour) {
+                    mask |= 1 << slot;
+                }
+            }
+        } else {
+            TellValue tell = (TellValue) action;
+            player = tell.player;
+            Hand hand = state.getHand(player);
+            for (int slot = 0; slot < hand.getSize(); slot++) {
+                Card card = hand.getCard(slot);
+                if (card != null && card.value == tell.value) {
+                    mask |= 1 << slot;
+                }
+            }
+        }
+        return TELL_CLASS | (player << 8) | mask;
+    }
+
+    /**
+     * Keep a single representative for each equivalence class of actions. The representative is the
+     * first action of its class in the given collection, so the result is deterministic for a given
+     * state and order of actions.
+     *
+     * @param actions the actions available in the state
+     * @param state   the state the actions would be applied to
+     * @return one action per equivalence class
+     */
+    public static List<Action> getRepresentatives(Collection<Action> actions, GameState state) {
+        Set<Integer> seenClasses = new HashSet<>();
+        List<Action> representatives = new ArrayList<>();
+        for (Action action : actions) {
+            if (seenClasses.add(getClassKey(action, state))) {
+                representatives.add(action);
+            }
+        }
+        return representatives;
+    }
+
+    /**
+     * Get the actions whose equivalence classes are not covered by any of the given actions.
+     *
+     * @param candidates the actions that could be added (e.g. the unexpanded ones)
+     * @param covered    the actions that are already present (e.g. the expanded ones)
+     * @param state      the state the actions would be applied to
+     * @return one action per class that has no covered action
+     */
+    public static List<Action> getUncoveredRepresentatives(Collection<Action> candidates, Collection<Action> covered, GameState state) {
+        Set<Integer> seenClasses = new HashSet<>();
+        for (Action action : covered) {
+            seenClasses.add(getClassKey(action, state));
+        }
+
+        List<Action> representatives = new ArrayList<>();
+        for (Action action : candidates) {
+            if (seenClasses.add(getClassKey(action, state))) {
+                representatives.add(action);
+            }
+        }
+        return representatives;
+    }
+}
@@ -0,0 +1,68 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * How many times each player (by name, so across games) performed each action, counted over the
+ * 60 action Ids of ActionIds, relative to the player performing the action.
+ *
+ * The counts of the players of the current game are resolved by seat when the game starts, so that
+ * recording an action is a single array increment. The counts may be shared with agents playing on
+ * other threads, so the increment locks the array it updates.
+ */
+public class ActionHistogram {
+    private final Map<String, int[]> countsByName;
+    private int[][] countsBySeat = new int[0][];
+
+    public ActionHistogram() {
+        this(new HashMap<>());
+    }
+
+    /**
+     * @param countsByName the counts to start from and count into, by player name, such as the tables of a
+     *                     ModelSnapshot shared with other agents
+     */
+    public ActionHistogram(Map<String, int[]> countsByName) {
+        this.countsByName = countsByName;
+    }
+
+    /**
+     * Resolve the counts of the players of a new game.
+     *
+     * @param names the names of the players, by seat
+     */
+    public void setPlayers(String[] names) {
+        countsBySeat = new int[names.length][];
+        for (int seat = 0; seat < names.length; seat++) {
+            countsBySeat[seat] = getCounts(names[seat]);
+        }
+    }
+
+    /**
+     * Count an action of the player in a seat.
+     *
+     * @param seat     the seat of the player
+     * @param actionId the Id of the action, relative to the player
+     */
+    public void record(int seat, int actionId) {
+        int[] counts = countsBySeat[seat];
+        synchronized (counts) {
+            counts[actionId]++;
+        }
+    }
+
+    /**
+     * Get the counts of a player, creating them if the player was never seen.
+     *
+     * @param name the name of the player
+     * @return the number of times the player performed each action Id
+     */
+    public int[] getCounts(String name) {
+        return countsByName.computeIfAbsent(name, key -> new int[ActionIds.NUM_ACTIONS]);
+    }
+
+    public Map<String, int[]> getAllCounts() {
+        return countsByName;
+    }
+}
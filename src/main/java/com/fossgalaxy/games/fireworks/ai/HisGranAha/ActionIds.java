@@ -0,0 +1,77 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.CardColour;
+import com.fossgalaxy.games.fireworks.state.actions.Action;
+import com.fossgalaxy.games.fireworks.state.actions.DiscardCard;
+import com.fossgalaxy.games.fireworks.state.actions.PlayCard;
+import com.fossgalaxy.games.fireworks.state.actions.TellColour;
+import com.fossgalaxy.games.fireworks.state.actions.TellValue;
+
+/**
+ * Conversions between actions and the 60 action Ids used by the neural network, relative to the
+ * player performing the action.
+ *
+ * Ids 0-4 discard a slot and 5-9 play a slot. From 10 onwards, each block of 10 Ids tells one of the
+ * 5 colours or one of the 5 values to the player at offset (block - 1): Ids 20-29 tell the next
+ * player, and so on. The block of Ids 10-19 (telling oneself) is never used.
+ */
+public final class ActionIds {
+    public static final int NUM_ACTIONS = 60;
+
+    private static final CardColour[] COLOURS = { CardColour.RED, CardColour.BLUE, CardColour.GREEN, CardColour.ORANGE, CardColour.WHITE };
+
+    private ActionIds() {
+    }
+
+    /**
+     * Retrieves the Id of an action, relative to the player performing it.
+     * @param action The action whose Id is desired.
+     * @param agentId The Id of the player performing the action.
+     * @param playerCount The number of current players in the game.
+     * @return The Id of the action.
+     */
+    public static int getActionId(Action action, int agentId, int playerCount) {
+        if (action instanceof DiscardCard)
+            return ((DiscardCard) action).slot;
+        if (action instanceof PlayCard)
+            return 5 + ((PlayCard) action).slot;
+
+        if (action instanceof TellColour) {
+            TellColour tell = (TellColour) action;
+            return 10 + 10 * getPlayerOffset(agentId, tell.player, playerCount) + tell.colour.ordinal();
+        }
+        TellValue tell = (TellValue) action;
+        return 10 + 10 * getPlayerOffset(agentId, tell.player, playerCount) + 5 + tell.value - 1;
+    }
+
+    /**
+     * Retrieves the action of a given Id, relative to the player performing it.
+     * @param actionId The Id of the action.
+     * @param agentId The Id of the player performing the action.
+     * @param playerCount The number of current players in the game.
+     * @return The action corresponding to the Id.
+     */
+    public static Action getAction(int actionId, int agentId, int playerCount) {
+        if (actionId < 5)
+            return new DiscardCard(actionId);
+        if (actionId < 10)
+            return new PlayCard(actionId - 5);
+
+        int playerToTell = (agentId + actionId / 10 - 1) % playerCount;
+        int kind = actionId % 10;
+        if (kind < 5)
+            return new TellColour(playerToTell, COLOURS[kind]);
+        return new TellValue(playerToTell, kind - 4);
+    }
+
+    /**
+     * Returns the position of a player with respect to another one.
+     * @param agentId The Id of the reference player.
+     * @param playerId The Id of the player whose offset is desired.
+     * @param playerCount The number of current players in the game.
+     * @return The offset of the player with respect to the reference player.
+     */
+    public static int getPlayerOffset(int agentId, int playerId, int playerCount) {
+        return (playerId - agentId + playerCount) % playerCount;
+    }
+}
@@ -0,0 +1,23 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.actions.Action;
+
+import java.util.List;
+
+/**
+ * Estimates how promising actions are before they have been searched, so that the most promising
+ * actions are expanded first.
+ */
+public interface ActionPrior {
+
+    /**
+     * Estimate how promising each of the actions available in a state is.
+     *
+     * @param actions the actions to estimate
+     * @param agentID the agent that would perform the actions
+     * @param state   the state the actions would be applied to
+     * @return a non-negative value for each action (in the same order), higher for more promising actions
+     */
+    double[] getPriors(List<Action> actions, int agentID, GameState state);
+}
@@ -0,0 +1,46 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import java.util.Arrays;
+
+/**
+ * The sequence of actions performed during one iteration of the search (first in the tree, then
+ * in the rollout), stored as the player performing each action and its Id relative to that player.
+ */
+public class ActionTrace {
+    private static final int INITIAL_CAPACITY = 128;
+
+    private int[] players;
+    private int[] actionIds;
+    private int size;
+
+    public ActionTrace() {
+        this.players = new int[INITIAL_CAPACITY];
+        this.actionIds = new int[INITIAL_CAPACITY];
+    }
+
+    public void add(int player, int actionId) {
+        if (size == players.length) {
+            players = Arrays.copyOf(players, size * 2);
+            actionIds = Arrays.copyOf(actionIds, size * 2);
+        }
+        players[size] = player;
+        actionIds[size] = actionId;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getPlayer(int index) {
+        return players[index];
+    }
+
+    public int getActionId(int index) {
+        return actionIds[index];
+    }
+}
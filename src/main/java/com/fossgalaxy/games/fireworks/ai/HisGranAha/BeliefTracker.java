@@ -0,0 +1,300 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.Card;
+import com.fossgalaxy.games.fireworks.state.CardColour;
+import com.fossgalaxy.games.fireworks.state.Deck;
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.Hand;
+import com.fossgalaxy.games.fireworks.state.HistoryEntry;
+import com.fossgalaxy.games.fireworks.state.actions.DiscardCard;
+import com.fossgalaxy.games.fireworks.state.actions.PlayCard;
+import com.fossgalaxy.games.fireworks.state.actions.TellColour;
+import com.fossgalaxy.games.fireworks.state.actions.TellValue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * What an agent believes about the cards in its own hand, kept up to date across turns.
+ *
+ * Each slot of the hand has a 25-bit mask of the card types (colour major, value minor, as in
+ * ZobristHash.getCardType) it can hold, and the number of unseen copies of each type is counted.
+ * Instead of rebuilding the possible cards of every slot on each move, the tracker only processes
+ * what changed since the last move: the new history entries (tells to the agent, its own plays and
+ * discards), the new discards, the growth of the table and the cards drawn by the other players.
+ *
+ * The masks and counts are then used to bind the cards of a determinization, without going through
+ * lists of cards.
+ */
+public class BeliefTracker implements HistoryCursor.Listener {
+    private static final CardColour[] COLOURS = { CardColour.RED, CardColour.BLUE, CardColour.GREEN, CardColour.ORANGE, CardColour.WHITE };
+    private static final int[] COPIES = { 3, 2, 2, 2, 1 };
+    private static final int ALL_TYPES = (1 << ZobristHash.NUM_CARD_TYPES) - 1;
+    private static final int NO_CARD = -1;
+    private static final int MAX_SAMPLING_ATTEMPTS = 20;
+
+    private final HistoryCursor cursor = new HistoryCursor();
+
+    // Possible card types of each slot of the agent's hand.
+    private final int[] slotMasks = new int[ZobristHash.MAX_HAND_SIZE];
+    // Copies of each card type that the agent cannot see (in the deck or in its own hand).
+    private final int[] unseen = new int[ZobristHash.NUM_CARD_TYPES];
+    // What was seen last time, to find out what changed.
+    private final int[] tableHeights = new int[COLOURS.length];
+    private final int[][] otherHands = new int[ZobristHash.MAX_PLAYERS][ZobristHash.MAX_HAND_SIZE];
+    private int discardCursor;
+    // One instance of each card type, used when binding.
+    private final Card[] cards = new Card[ZobristHash.NUM_CARD_TYPES];
+
+    // Scratch space of the sampler.
+    private final int[] remaining = new int[ZobristHash.NUM_CARD_TYPES];
+    private final int[] bindOrder = new int[ZobristHash.MAX_HAND_SIZE];
+    private final int[] boundTypes = new int[ZobristHash.MAX_HAND_SIZE];
+
+    private int agentID;
+    private GameState state;
+
+    /**
+     * Forget everything, as a new game is starting.
+     */
+    public void reset() {
+        cursor.reset();
+    }
+
+    /**
+     * Bring the beliefs up to date with the state of the game.
+     *
+     * @param agentID the agent whose hand is tracked
+     * @param state   the current state of the game, as seen by the agent
+     */
+    public void update(int agentID, GameState state) {
+        this.agentID = agentID;
+        this.state = state;
+        List<HistoryEntry> history = state.getActionHistory();
+        if (history.size() < cursor.getPosition()) {
+            cursor.reset();
+        }
+        if (cursor.startedNewGame()) {
+            initialise(state);
+        }
+
+        // Our own plays and discards and the tells to us, in the order they happened.
+        cursor.advance(history, this);
+
+        // Cards that became visible: new discards, cards added to the table and cards drawn by the others.
+        List<Card> discards = state.getDiscards();
+        for (int i = discardCursor; i < discards.size(); i++) {
+            see(discards.get(i));
+        }
+        discardCursor = discards.size();
+
+        for (int colour = 0; colour < COLOURS.length; colour++) {
+            int height = state.getTableValue(COLOURS[colour]);
+            for (int value = tableHeights[colour] + 1; value <= height; value++) {
+                unseen[colour * 5 + value - 1]--;
+            }
+            tableHeights[colour] = height;
+        }
+
+        for (int player = 0; player < state.getPlayerCount(); player++) {
+            if (player == agentID) {
+                continue;
+            }
+            Hand hand = state.getHand(player);
+            for (int slot = 0; slot < hand.getSize(); slot++) {
+                Card card = hand.getCard(slot);
+                int type = card == null ? NO_CARD : ZobristHash.getCardType(card);
+                if (type != otherHands[player][slot]) {
+                    // The card that left the hand went to the table or the discards, where it is counted.
+                    if (otherHands[player][slot] != NO_CARD) {
+                        unseen[otherHands[player][slot]]++;
+                    }
+                    if (card != null) {
+                        see(card);
+                    }
+                    otherHands[player][slot] = type;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void onEntry(HistoryEntry entry) {
+        if (entry.playerID == agentID) {
+            // A new card took the place of the one we played or discarded.
+            if (entry.action instanceof PlayCard) {
+                slotMasks[((PlayCard) entry.action).slot] = ALL_TYPES;
+            } else if (entry.action instanceof DiscardCard) {
+                slotMasks[((DiscardCard) entry.action).slot] = ALL_TYPES;
+            }
+            return;
+        }
+
+        // Our hand only changes on our turn, so the slots touched by a tell are the ones that know its attribute now.
+        Hand hand = state.getHand(agentID);
+        if (entry.action instanceof TellColour && ((TellColour) entry.action).player == agentID) {
+            CardColour colour = ((TellColour) entry.action).colour;
+            int colourMask = 0x1F << (colour.ordinal() * 5);
+            for (int slot = 0; slot < hand.getSize(); slot++) {
+                slotMasks[slot] &= colour.equals(hand.getKnownColour(slot)) ? colourMask : ~colourMask;
+            }
+        } else if (entry.action instanceof TellValue && ((TellValue) entry.action).player == agentID) {
+            int value = ((TellValue) entry.action).value;
+            int valueMask = 0x108421 << (value - 1);
+            for (int slot = 0; slot < hand.getSize(); slot++) {
+                Integer knownValue = hand.getKnownValue(slot);
+                slotMasks[slot] &= knownValue != null && knownValue == value ? valueMask : ~valueMask;
+            }
+        }
+    }
+
+    /**
+     * Get the card types a slot of the hand can hold.
+     *
+     * @param slot the slot
+     * @return the mask of the possible types, taking into account the unseen copies
+     */
+    public int getPossibleTypes(int slot) {
+        int mask = slotMasks[slot];
+        for (int type = 0; type < unseen.length; type++) {
+            if (unseen[type] <= 0) {
+                mask &= ~(1 << type);
+            }
+        }
+        return mask;
+    }
+
+    public int getUnseenCount(int cardType) {
+        return unseen[cardType];
+    }
+
+    /**
+     * Bind a random assignment of cards to the agent's hand, consistent with the beliefs, and remove
+     * the bound cards from the deck of the state.
+     * <p>
+     * Slots with fewer possibilities are bound first, and each card type is drawn in proportion to its
+     * unseen copies. If no consistent assignment is found after a few attempts, the constraints of the
+     * last attempt are relaxed for the slots that could not be bound.
+     *
+     * @param world  the state to determinize, a copy of the one given to update
+     * @param random the source of randomness
+     */
+    public void bindHand(GameState world, Random random) {
+        Hand hand = world.getHand(agentID);
+        int handSize = hand.getSize();
+        int slotCount = orderSlots(hand);
+
+        boolean consistent = false;
+        for (int attempt = 0; attempt < MAX_SAMPLING_ATTEMPTS && !consistent; attempt++) {
+            consistent = sampleTypes(slotCount, random, attempt == MAX_SAMPLING_ATTEMPTS - 1);
+        }
+
+        Deck deck = world.getDeck();
+        for (int slot = 0; slot < handSize; slot++) {
+            Card card = boundTypes[slot] == NO_CARD ? null : cards[boundTypes[slot]];
+            if (card != null && hand.hasCard(slot)) {
+                hand.bindCard(slot, card);
+                deck.remove(card);
+            }
+        }
+    }
+
+    private boolean sampleTypes(int slotCount, Random random, boolean relax) {
+        System.arraycopy(unseen, 0, remaining, 0, remaining.length);
+        for (int i = 0; i < slotCount; i++) {
+            int slot = bindOrder[i];
+            int type = drawType(slotMasks[slot], random);
+            if (type == NO_CARD && relax) {
+                type = drawType(ALL_TYPES, random);
+            }
+            if (type == NO_CARD) {
+                return false;
+            }
+            remaining[type]--;
+            boundTypes[slot] = type;
+        }
+        return true;
+    }
+
+    private int drawType(int mask, Random random) {
+        int total = 0;
+        for (int type = 0; type < remaining.length; type++) {
+            if ((mask & (1 << type)) != 0 && remaining[type] > 0 && cards[type] != null) {
+                total += remaining[type];
+            }
+        }
+        if (total == 0) {
+            return NO_CARD;
+        }
+
+        int pick = random.nextInt(total);
+        for (int type = 0; type < remaining.length; type++) {
+            if ((mask & (1 << type)) != 0 && remaining[type] > 0 && cards[type] != null) {
+                pick -= remaining[type];
+                if (pick < 0) {
+                    return type;
+                }
+            }
+        }
+        return NO_CARD;
+    }
+
+    private int orderSlots(Hand hand) {
+        // Insertion sort by number of possible types, as there are at most 5 slots. Empty slots (once the deck has
+        // run out) are left out, so that they don't use up a card type.
+        int slotCount = 0;
+        for (int slot = 0; slot < hand.getSize(); slot++) {
+            boundTypes[slot] = NO_CARD;
+            if (!hand.hasCard(slot)) {
+                continue;
+            }
+            int j = slotCount - 1;
+            while (j >= 0 && Integer.bitCount(slotMasks[bindOrder[j]]) > Integer.bitCount(slotMasks[slot])) {
+                bindOrder[j + 1] = bindOrder[j];
+                j--;
+            }
+            bindOrder[j + 1] = slot;
+            slotCount++;
+        }
+        return slotCount;
+    }
+
+    private void see(Card card) {
+        int type = ZobristHash.getCardType(card);
+        unseen[type]--;
+        cards[type] = card;
+    }
+
+    private void initialise(GameState state) {
+        for (int type = 0; type < unseen.length; type++) {
+            unseen[type] = COPIES[type % 5];
+        }
+        for (int slot = 0; slot < slotMasks.length; slot++) {
+            slotMasks[slot] = ALL_TYPES;
+        }
+        for (int[] hand : otherHands) {
+            Arrays.fill(hand, NO_CARD);
+        }
+        Arrays.fill(tableHeights, 0);
+        discardCursor = 0;
+
+        // The cards we cannot see are in the deck of our view of the game, which gives an instance of each of them.
+        for (Card card : state.getDeck().toList()) {
+            cards[ZobristHash.getCardType(card)] = card;
+        }
+
+        // What we already know about our cards when starting to track them.
+        Hand hand = state.getHand(agentID);
+        for (int slot = 0; slot < hand.getSize(); slot++) {
+            CardColour knownColour = hand.getKnownColour(slot);
+            Integer knownValue = hand.getKnownValue(slot);
+            if (knownColour != null) {
+                slotMasks[slot] &= 0x1F << (knownColour.ordinal() * 5);
+            }
+            if (knownValue != null) {
+                slotMasks[slot] &= 0x108421 << (knownValue - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,338 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.Card;
+import com.fossgalaxy.games.fireworks.state.CardColour;
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.Hand;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compact, allocation-free representation of a fully determinized game state, used for simulating
+ * rollouts much faster than on the library GameState.
+ *
+ * Cards are stored as one of the 25 card types (colour major, value minor). The table heights and
+ * the discard counts are packed in a long each, the hands and the remaining deck are small byte
+ * arrays and the knowledge of each slot is a 10-bit mask of its possible colours and values.
+ * Actions are the 60 action Ids of ActionIds, relative to the player performing them.
+ *
+ * An instance is meant to be loaded once per search (or per rollout) and then reused.
+ */
+public class CompactState {
+    public static final int NO_CARD = -1;
+    public static final int MAX_PLAYERS = 5;
+    public static final int MAX_HAND_SIZE = 5;
+    public static final int NUM_CARD_TYPES = 25;
+    public static final int MAX_INFO_TOKENS = 8;
+    public static final int MAX_SCORE = 25;
+
+    private static final CardColour[] COLOURS = { CardColour.RED, CardColour.BLUE, CardColour.GREEN, CardColour.ORANGE, CardColour.WHITE };
+    private static final int DECK_SIZE = 50;
+    private static final int ALL_POSSIBLE = (1 << 10) - 1;
+    private static final int TABLE_BITS = 3;
+    private static final int DISCARD_BITS = 2;
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private int playerCount;
+    private int handSize;
+    private int information;
+    private int lives;
+    private int movesLeft;
+
+    // Height of the table for each colour, 3 bits per colour.
+    private long table;
+    // Number of discarded cards of each type, 2 bits per type.
+    private long discards;
+
+    // Card type in each slot (player major), or NO_CARD.
+    private final byte[] hands = new byte[MAX_PLAYERS * MAX_HAND_SIZE];
+    // Possible colours (bits 0-4) and values (bits 5-9) of each slot, as known by the owner of the slot.
+    private final short[] knowledge = new short[MAX_PLAYERS * MAX_HAND_SIZE];
+    // Remaining deck; the next card to be drawn is the last one.
+    private final byte[] deck = new byte[DECK_SIZE];
+    private int deckSize;
+
+    /**
+     * Load a fully determinized state (every card in every hand must be known).
+     *
+     * @param state the state to load
+     */
+    public void load(GameState state) {
+        playerCount = state.getPlayerCount();
+        handSize = state.getHand(0).getSize();
+        information = state.getInfomation();
+        lives = state.getLives();
+        movesLeft = state.getMovesLeft();
+
+        table = 0;
+        for (int colour = 0; colour < COLOURS.length; colour++) {
+            table |= (long) state.getTableValue(COLOURS[colour]) << (colour * TABLE_BITS);
+        }
+
+        discards = 0;
+        for (Card card : state.getDiscards()) {
+            discards += 1L << (ZobristHash.getCardType(card) * DISCARD_BITS);
+        }
+
+        for (int player = 0; player < playerCount; player++) {
+            Hand hand = state.getHand(player);
+            for (int slot = 0; slot < handSize; slot++) {
+                int index = player * MAX_HAND_SIZE + slot;
+                Card card = hand.getCard(slot);
+                hands[index] = (byte) (card == null ? NO_CARD : ZobristHash.getCardType(card));
+
+                int possible = ALL_POSSIBLE;
+                CardColour knownColour = hand.getKnownColour(slot);
+                Integer knownValue = hand.getKnownValue(slot);
+                if (knownColour != null) {
+                    possible &= ~0x1F | (1 << knownColour.ordinal());
+                }
+                if (knownValue != null) {
+                    possible &= 0x1F | (1 << (4 + knownValue));
+                }
+                knowledge[index] = (short) possible;
+            }
+        }
+
+        // The first card of the list is the next one to be drawn.
+        List<Card> cards = state.getDeck().toList();
+        deckSize = cards.size();
+        for (int i = 0; i < deckSize; i++) {
+            deck[deckSize - 1 - i] = (byte) ZobristHash.getCardType(cards.get(i));
+        }
+    }
+
+    /**
+     * Copy another compact state into this one, without allocating.
+     *
+     * @param other the state to copy
+     */
+    public void copyFrom(CompactState other) {
+        playerCount = other.playerCount;
+        handSize = other.handSize;
+        information = other.information;
+        lives = other.lives;
+        movesLeft = other.movesLeft;
+        table = other.table;
+        discards = other.discards;
+        System.arraycopy(other.hands, 0, hands, 0, hands.length);
+        System.arraycopy(other.knowledge, 0, knowledge, 0, knowledge.length);
+        System.arraycopy(other.deck, 0, deck, 0, other.deckSize);
+        deckSize = other.deckSize;
+    }
+
+    public boolean isGameOver() {
+        return lives <= 0 || movesLeft <= 0 || getScore() == MAX_SCORE;
+    }
+
+    public int getScore() {
+        int score = 0;
+        for (int colour = 0; colour < COLOURS.length; colour++) {
+            score += getTableValue(colour);
+        }
+        return score;
+    }
+
+    public int getTableValue(int colour) {
+        return (int) (table >>> (colour * TABLE_BITS)) & 0x7;
+    }
+
+    public int getDiscardCount(int cardType) {
+        return (int) (discards >>> (cardType * DISCARD_BITS)) & 0x3;
+    }
+
+    public int getCard(int player, int slot) {
+        return hands[player * MAX_HAND_SIZE + slot];
+    }
+
+    public int getKnowledge(int player, int slot) {
+        return knowledge[player * MAX_HAND_SIZE + slot];
+    }
+
+    public int getPlayerCount() {
+        return playerCount;
+    }
+
+    public int getHandSize() {
+        return handSize;
+    }
+
+    public int getInformation() {
+        return information;
+    }
+
+    public int getLives() {
+        return lives;
+    }
+
+    public int getMovesLeft() {
+        return movesLeft;
+    }
+
+    public int getDeckSize() {
+        return deckSize;
+    }
+
+    /**
+     * Calculate a 64-bit hash of everything that influences the rest of the game: the cards in the hands, the
+     * table, the tokens, the moves left and the size of the deck (whose order is fixed once determinized).
+     * Knowledge is left out, as it does not change what can happen in a determinized game.
+     *
+     * @return the hash of this state
+     */
+    public long hash() {
+        long hash = FNV_OFFSET;
+        hash = (hash ^ table) * FNV_PRIME;
+        for (int i = 0; i < playerCount * MAX_HAND_SIZE; i++) {
+            hash = (hash ^ hands[i]) * FNV_PRIME;
+        }
+        hash = (hash ^ information) * FNV_PRIME;
+        hash = (hash ^ lives) * FNV_PRIME;
+        hash = (hash ^ movesLeft) * FNV_PRIME;
+        hash = (hash ^ deckSize) * FNV_PRIME;
+        return hash;
+    }
+
+    /**
+     * Check if an action is legal for a player.
+     *
+     * @param player   the player performing the action
+     * @param actionId the Id of the action, relative to the player
+     * @return true if the action can be performed
+     */
+    public boolean isLegal(int player, int actionId) {
+        if (actionId < 5) {
+            return actionId < handSize && information < MAX_INFO_TOKENS && hands[player * MAX_HAND_SIZE + actionId] != NO_CARD;
+        }
+        if (actionId < 10) {
+            return actionId - 5 < handSize && hands[player * MAX_HAND_SIZE + actionId - 5] != NO_CARD;
+        }
+
+        int offset = actionId / 10 - 1;
+        if (information == 0 || offset == 0 || offset >= playerCount) {
+            return false;
+        }
+        return getTouchedSlots((player + offset) % playerCount, actionId % 10) != 0;
+    }
+
+    /**
+     * Write the legal actions of a player into an array.
+     *
+     * @param player  the player performing the actions
+     * @param actions the array receiving the action Ids, of at least ActionIds.NUM_ACTIONS elements
+     * @return the number of legal actions written
+     */
+    public int getLegalActions(int player, int[] actions) {
+        int count = 0;
+        int maxAction = 10 + 10 * playerCount;
+        for (int actionId = 0; actionId < maxAction; actionId++) {
+            if (isLegal(player, actionId)) {
+                actions[count++] = actionId;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Apply a legal action of a player, including drawing a card and counting down the last round.
+     *
+     * @param player   the player performing the action
+     * @param actionId the Id of the action, relative to the player
+     */
+    public void apply(int player, int actionId) {
+        if (actionId < 5) {
+            int slot = actionId;
+            discard(hands[player * MAX_HAND_SIZE + slot]);
+            information = Math.min(MAX_INFO_TOKENS, information + 1);
+            draw(player, slot);
+        } else if (actionId < 10) {
+            int slot = actionId - 5;
+            int card = hands[player * MAX_HAND_SIZE + slot];
+            int colour = card / 5;
+            int value = card % 5 + 1;
+            if (getTableValue(colour) + 1 == value) {
+                table += 1L << (colour * TABLE_BITS);
+                if (value == 5 && information < MAX_INFO_TOKENS) {
+                    information++;
+                }
+            } else {
+                lives--;
+                discard(card);
+            }
+            draw(player, slot);
+        } else {
+            int receiver = (player + actionId / 10 - 1) % playerCount;
+            tell(receiver, actionId % 10);
+            information--;
+        }
+
+        if (deckSize == 0) {
+            movesLeft--;
+        }
+    }
+
+    /**
+     * Play random legal moves until the game ends or the depth is reached.
+     *
+     * @param firstPlayer the player moving first
+     * @param maxMoves    the maximum number of moves to play
+     * @param random      the source of randomness
+     * @param actions     scratch array of at least ActionIds.NUM_ACTIONS elements
+     * @return the number of moves played
+     */
+    public int playRandomly(int firstPlayer, int maxMoves, Random random, int[] actions) {
+        int player = firstPlayer;
+        int moves = 0;
+        while (!isGameOver() && moves < maxMoves) {
+            int legalCount = getLegalActions(player, actions);
+            apply(player, actions[random.nextInt(legalCount)]);
+            player = (player + 1) % playerCount;
+            moves++;
+        }
+        return moves;
+    }
+
+    /**
+     * Get the mask of the slots of a player touched by a tell.
+     *
+     * @param receiver the player being told
+     * @param tell     0-4 for the colours, 5-9 for the values 1-5
+     * @return the mask of the touched slots
+     */
+    public int getTouchedSlots(int receiver, int tell) {
+        int mask = 0;
+        for (int slot = 0; slot < handSize; slot++) {
+            int card = hands[receiver * MAX_HAND_SIZE + slot];
+            if (card != NO_CARD && (tell < 5 ? card / 5 == tell : card % 5 == tell - 5)) {
+                mask |= 1 << slot;
+            }
+        }
+        return mask;
+    }
+
+    private void tell(int receiver, int tell) {
+        int touched = getTouchedSlots(receiver, tell);
+        int groupMask = tell < 5 ? 0x1F : 0x1F << 5;
+        for (int slot = 0; slot < handSize; slot++) {
+            int index = receiver * MAX_HAND_SIZE + slot;
+            if ((touched & (1 << slot)) != 0) {
+                // The slot is exactly the told colour/value.
+                knowledge[index] = (short) ((knowledge[index] & ~groupMask) | (1 << tell));
+            } else {
+                knowledge[index] = (short) (knowledge[index] & ~(1 << tell));
+            }
+        }
+    }
+
+    private void discard(int card) {
+        discards += 1L << (card * DISCARD_BITS);
+    }
+
+    private void draw(int player, int slot) {
+        int index = player * MAX_HAND_SIZE + slot;
+        hands[index] = deckSize > 0 ? deck[--deckSize] : NO_CARD;
+        knowledge[index] = ALL_POSSIBLE;
+    }
+}
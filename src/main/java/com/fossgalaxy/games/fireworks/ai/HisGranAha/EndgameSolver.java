@@ -0,0 +1,163 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.GameState;
+
+/**
+ * Exact solver for the end of a determinized game.
+ *
+ * Once the deck is (almost) exhausted, few moves are left and the outcome of a determinized game
+ * can be computed exactly instead of being approximated by random rollouts or the neural network.
+ * Every player is assumed to choose the move leading to the highest final score, as the game is
+ * cooperative; there are no chance nodes left, since the order of the deck is fixed by the
+ * determinization. The search runs on CompactState and memoizes positions by their hash in a
+ * primitive table, so that solving does not allocate.
+ */
+public class EndgameSolver {
+    public static final int DEFAULT_MAX_DECK_SIZE = 0;
+
+    private static final int MAX_DEPTH = 64;
+    private static final int TABLE_SIZE = 1 << 16;
+    private static final int TELL_START = 10;
+
+    // Cards that can be left in the deck for a position to be solved.
+    private final int maxDeckSize;
+
+    // States and legal actions of each level of the search, allocated once.
+    private final CompactState[] stack;
+    private final int[][] actions;
+
+    // Memoized values by hash. Entries of older searches are ignored thanks to the generation stamps.
+    private final long[] memoKeys;
+    private final byte[] memoValues;
+    private final int[] memoGenerations;
+    private int generation;
+
+    private final CompactState loadedState;
+
+    public EndgameSolver() {
+        this(DEFAULT_MAX_DECK_SIZE);
+    }
+
+    /**
+     * Create a solver.
+     *
+     * @param maxDeckSize the maximum number of cards left in the deck for a position to be solved
+     */
+    public EndgameSolver(int maxDeckSize) {
+        this.maxDeckSize = maxDeckSize;
+        this.stack = new CompactState[MAX_DEPTH + 1];
+        this.actions = new int[MAX_DEPTH + 1][ActionIds.NUM_ACTIONS];
+        for (int i = 0; i < stack.length; i++) {
+            stack[i] = new CompactState();
+        }
+        this.memoKeys = new long[TABLE_SIZE];
+        this.memoValues = new byte[TABLE_SIZE];
+        this.memoGenerations = new int[TABLE_SIZE];
+        this.loadedState = new CompactState();
+    }
+
+    /**
+     * Check if a position is close enough to the end of the game to be solved.
+     *
+     * @param state the position
+     * @return true if the position can be solved
+     */
+    public boolean canSolve(CompactState state) {
+        return !state.isGameOver() && state.getDeckSize() <= maxDeckSize;
+    }
+
+    /**
+     * Check if a position is close enough to the end of the game to be solved.
+     *
+     * @param state the position
+     * @return true if the position can be solved
+     */
+    public boolean canSolve(GameState state) {
+        return !state.isGameOver() && state.getDeck().getCardsLeft() <= maxDeckSize;
+    }
+
+    /**
+     * Compute the final score of a determinized position when every player plays perfectly.
+     *
+     * @param state    the determinized position (every card in every hand must be known)
+     * @param playerID the player to move
+     * @return the best final score that can be reached
+     */
+    public int solve(GameState state, int playerID) {
+        loadedState.load(state);
+        return solve(loadedState, playerID);
+    }
+
+    /**
+     * Compute the final score of a position when every player plays perfectly.
+     *
+     * @param state    the position, which is not modified
+     * @param playerID the player to move
+     * @return the best final score that can be reached
+     */
+    public int solve(CompactState state, int playerID) {
+        generation++;
+        stack[0].copyFrom(state);
+        return search(0, playerID);
+    }
+
+    private int search(int depth, int player) {
+        CompactState state = stack[depth];
+        if (state.isGameOver() || depth == MAX_DEPTH) {
+            return state.getScore();
+        }
+
+        long key = state.hash() * 31 + player;
+        int index = (int) (key ^ (key >>> 32)) & (TABLE_SIZE - 1);
+        if (memoGenerations[index] == generation && memoKeys[index] == key) {
+            return memoValues[index];
+        }
+
+        // Once the deck is empty, every move scores at most one point.
+        int upperBound = CompactState.MAX_SCORE;
+        if (state.getDeckSize() == 0) {
+            upperBound = Math.min(upperBound, state.getScore() + state.getMovesLeft());
+        }
+
+        int[] legalActions = actions[depth];
+        int legalCount = state.getLegalActions(player, legalActions);
+        int nextPlayer = (player + 1) % state.getPlayerCount();
+        int best = -1;
+        boolean tellSearched = false;
+        int discardedTypes = 0;
+
+        for (int i = 0; i < legalCount && best < upperBound; i++) {
+            int actionId = legalActions[i];
+
+            // In a determinized game knowledge does not matter, so every tell just spends a token.
+            if (actionId >= TELL_START) {
+                if (tellSearched) {
+                    continue;
+                }
+                tellSearched = true;
+            }
+
+            // Discarding either of two cards of the same type leads to the same position.
+            if (actionId < 5) {
+                int cardType = state.getCard(player, actionId);
+                if ((discardedTypes & (1 << cardType)) != 0) {
+                    continue;
+                }
+                discardedTypes |= 1 << cardType;
+            }
+
+            CompactState next = stack[depth + 1];
+            next.copyFrom(state);
+            next.apply(player, actionId);
+            best = Math.max(best, search(depth + 1, nextPlayer));
+        }
+        if (best < 0) {
+            best = state.getScore();
+        }
+
+        memoKeys[index] = key;
+        memoValues[index] = (byte) best;
+        memoGenerations[index] = generation;
+        return best;
+    }
+}
@@ -0,0 +1,77 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.Card;
+import com.fossgalaxy.games.fireworks.state.CardColour;
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.Hand;
+import com.fossgalaxy.games.fireworks.state.actions.Action;
+import com.fossgalaxy.games.fireworks.state.actions.PlayCard;
+import com.fossgalaxy.games.fireworks.state.actions.TellColour;
+import com.fossgalaxy.games.fireworks.state.actions.TellValue;
+
+import java.util.List;
+
+/**
+ * Hand-written prior preferring plays of cards known to be playable and tells about playable cards.
+ */
+public class HeuristicActionPrior implements ActionPrior {
+    private static final double SAFE_PLAY = 10;
+    private static final double PLAYABLE_TELL = 5;
+    private static final double INFORMATIVE_TELL = 2;
+    private static final double DEFAULT = 1;
+    private static final double RISKY_PLAY = 0.5;
+
+    @Override
+    public double[] getPriors(List<Action> actions, int agentID, GameState state) {
+        double[] priors = new double[actions.size()];
+        for (int i = 0; i < priors.length; i++) {
+            priors[i] = getPrior(actions.get(i), agentID, state);
+        }
+        return priors;
+    }
+
+    private double getPrior(Action action, int agentID, GameState state) {
+        if (action instanceof PlayCard) {
+            Hand hand = state.getHand(agentID);
+            int slot = ((PlayCard) action).slot;
+            CardColour colour = hand.getKnownColour(slot);
+            Integer value = hand.getKnownValue(slot);
+            if (colour != null && value != null && state.getTableValue(colour) + 1 == value) {
+                return SAFE_PLAY;
+            }
+            return RISKY_PLAY;
+        }
+
+        if (action instanceof TellColour) {
+            TellColour tell = (TellColour) action;
+            Hand hand = state.getHand(tell.player);
+            double prior = DEFAULT;
+            for (int slot = 0; slot < hand.getSize(); slot++) {
+                Card card = hand.getCard(slot);
+                if (card != null && card.colour == tell.colour && hand.getKnownColour(slot) != tell.colour) {
+                    prior = Math.max(prior, isPlayable(state, card) ? PLAYABLE_TELL : INFORMATIVE_TELL);
+                }
+            }
+            return prior;
+        }
+
+        if (action instanceof TellValue) {
+            TellValue tell = (TellValue) action;
+            Hand hand = state.getHand(tell.player);
+            double prior = DEFAULT;
+            for (int slot = 0; slot < hand.getSize(); slot++) {
+                Card card = hand.getCard(slot);
+                if (card != null && card.value == tell.value && hand.getKnownValue(slot) == null) {
+                    prior = Math.max(prior, isPlayable(state, card) ? PLAYABLE_TELL : INFORMATIVE_TELL);
+                }
+            }
+            return prior;
+        }
+
+        return DEFAULT;
+    }
+
+    private static boolean isPlayable(GameState state, Card card) {
+        return state.getTableValue(card.colour) + 1 == card.value;
+    }
+}
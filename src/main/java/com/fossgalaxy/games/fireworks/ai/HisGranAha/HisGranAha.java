@@ -3,11 +3,11 @@ package com.fossgalaxy.games.fireworks.ai.HisGranAha;
 import com.fossgalaxy.games.fireworks.ai.Agent;
 import com.fossgalaxy.games.fireworks.ai.iggi.Utils;
 import com.fossgalaxy.games.fireworks.ai.rule.logic.DeckUtils;
+import com.fossgalaxy.games.fireworks.annotations.AgentBuilderStatic;
 import com.fossgalaxy.games.fireworks.state.*;
 import com.fossgalaxy.games.fireworks.state.actions.*;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Agent that plays Hanabi using MCTS but replacing its rollout phase with the predictions obtained
@@ -23,6 +23,26 @@ public class HisGranAha implements Agent {
 
     // Attributes of the class.
     private NeuralNetwork nn;
+    private ModelRegistry modelRegistry;
+    private long modelVersion;
+    private int timeLimit = TIME_LIMIT;
+    private TimeManager timeManager;
+    private EndgameSolver endgameSolver;
+    private OpeningBook openingBook;
+    private int determinizationBatch = 1;
+    private int maxIterations;
+    private int lastIterations;
+    private long nnCalls;
+    private TelemetryListener telemetryListener = JsonLinesTelemetrySink.getConfigured();
+    private SearchTelemetry telemetry;
+    private String agentName = "HisGranAha";
+    private int iterationDepth;
+    private Ponderer ponderer;
+    private BeliefTracker beliefTracker;
+    private final Random random = new Random();
+    private boolean pondering;
+    private boolean abstractActions;
+    private List<SelfPlayExample> recordedExamples;
     private Set<NNState> visitedStates;
     private Map<NNState, double[]> policies;
     private Map<NNState, double[]> qValues;
@@ -41,6 +61,252 @@ public class HisGranAha implements Agent {
         }
     }
 
+    /**
+     * Constructs an instance of this agent that takes its neural network from a registry. Whenever a
+     * new model is promoted in the registry, the agent swaps it in before its next move.
+     * @param modelRegistry The registry holding the model currently in use.
+     * @param timeLimit The time (in milliseconds) the agent can spend searching on each move.
+     */
+    public HisGranAha(ModelRegistry modelRegistry, int timeLimit) {
+        this.modelRegistry = modelRegistry;
+        this.timeLimit = timeLimit;
+        swapModelIfPromoted();
+    }
+
+    /**
+     * Builds an instance of this agent whose time per move is decided by a TimeManager.
+     * @return The agent that was built.
+     */
+    @AgentBuilderStatic("HisGranAhaAdaptive")
+    public static HisGranAha buildAdaptive() {
+        HisGranAha agent = new HisGranAha();
+        agent.setTimeManager(new TimeManager(TIME_LIMIT, TimeManager.DEFAULT_MIN_MOVE_TIME, TimeManager.DEFAULT_MAX_MOVE_TIME));
+        return agent;
+    }
+
+    /**
+     * Builds an instance of this agent that searches a single action per class of equivalent tells.
+     * @return The agent that was built.
+     */
+    @AgentBuilderStatic("HisGranAhaAbstract")
+    public static HisGranAha buildAbstract() {
+        HisGranAha agent = new HisGranAha();
+        agent.setAbstractActions(true);
+        return agent;
+    }
+
+    /**
+     * Builds an instance of this agent that evaluates positions exactly once the deck is exhausted.
+     * @return The agent that was built.
+     */
+    @AgentBuilderStatic("HisGranAhaEndgame")
+    public static HisGranAha buildEndgame() {
+        HisGranAha agent = new HisGranAha();
+        agent.setEndgameSolver(new EndgameSolver());
+        return agent;
+    }
+
+    /**
+     * Sets the solver used to evaluate leaves exactly, instead of with the network value, once the
+     * deck is exhausted.
+     * @param endgameSolver The solver to use, or null to always use the network value.
+     */
+    public void setEndgameSolver(EndgameSolver endgameSolver) {
+        this.endgameSolver = endgameSolver;
+    }
+
+    /**
+     * Builds an instance of this agent that looks its position up in the opening book before searching.
+     * @return The agent that was built.
+     */
+    @AgentBuilderStatic("HisGranAhaBook")
+    public static HisGranAha buildBook() {
+        HisGranAha agent = new HisGranAha();
+        agent.setOpeningBook(OpeningBook.load(OpeningBook.DEFAULT_PATH));
+        return agent;
+    }
+
+    /**
+     * Sets the book looked up before searching. A dominant book move is played directly; otherwise the
+     * statistics of the book are used as the initial Q-values and visit counts of the root.
+     * @param openingBook The book to use, or null to always search from scratch.
+     */
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    /**
+     * Builds an instance of this agent that keeps each determinization for a batch of iterations.
+     * @return The agent that was built.
+     */
+    @AgentBuilderStatic("HisGranAhaReuse")
+    public static HisGranAha buildReuse() {
+        HisGranAha agent = new HisGranAha();
+        agent.setDeterminizationBatch(MCTS.DEFAULT_DETERMINIZATION_BATCH);
+        return agent;
+    }
+
+    /**
+     * Sets the number of consecutive iterations that keep the same cards in our hand. Only the deck
+     * is reshuffled between the iterations of a batch.
+     * @param determinizationBatch The number of iterations per determinization, 1 to determinize on every iteration.
+     */
+    public void setDeterminizationBatch(int determinizationBatch) {
+        this.determinizationBatch = determinizationBatch;
+    }
+
+    /**
+     * Returns the number of iterations of the last search.
+     * @return The number of iterations performed on the last move.
+     */
+    public int getLastIterations() {
+        return lastIterations;
+    }
+
+    /**
+     * Sets a maximum number of iterations per move, after which the search stops even if there is
+     * time left.
+     * @param maxIterations The maximum number of iterations per move, 0 to only stop when the time is up.
+     */
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Sets the listener receiving the telemetry of every search (iterations, states evaluated,
+     * depths, time spent determinizing, selecting and in the neural network, hits of the visited
+     * states, GC time and root statistics) at the end of each move. By default, this is the sink of
+     * JsonLinesTelemetrySink.getConfigured, if telemetry was turned on with a system property.
+     * @param telemetryListener The listener receiving the telemetry, or null to record nothing.
+     */
+    public void setTelemetryListener(TelemetryListener telemetryListener) {
+        this.telemetryListener = telemetryListener;
+    }
+
+    /**
+     * Returns the number of calls to the neural network made by this agent, including the ones made
+     * while pondering.
+     * @return The number of predictions made since the agent was created.
+     */
+    public long getNNCalls() {
+        return nnCalls;
+    }
+
+    /**
+     * Returns the size of the tree of the last search.
+     * @return The number of distinct states evaluated by the neural network.
+     */
+    public int getTreeSize() {
+        return visitedStates == null ? 0 : visitedStates.size();
+    }
+
+    /**
+     * Builds an instance of this agent that keeps searching while the other players take their turns.
+     * @return The agent that was built.
+     */
+    @AgentBuilderStatic("HisGranAhaPonder")
+    public static HisGranAha buildPonder() {
+        HisGranAha agent = new HisGranAha();
+        agent.setPonderer(new Ponderer());
+        return agent;
+    }
+
+    /**
+     * Sets the ponderer that searches the states following our chosen move while the other players
+     * take their turns. The tables filled while pondering (and only those) are kept for the next move.
+     * @param ponderer The ponderer running the background search, or null to stay idle between moves.
+     */
+    public void setPonderer(Ponderer ponderer) {
+        stopPondering();
+        this.ponderer = ponderer;
+    }
+
+    @Override
+    public void receiveID(int agentID, String[] names) {
+        agentName = names[agentID];
+        // A new game is starting, so whatever was pondered or tracked belongs to the previous one.
+        stopPondering();
+        if (beliefTracker != null)
+            beliefTracker.reset();
+    }
+
+    /**
+     * Builds an instance of this agent that keeps the possible cards of its hand up to date across turns.
+     * @return The agent that was built.
+     */
+    @AgentBuilderStatic("HisGranAhaBelief")
+    public static HisGranAha buildBelief() {
+        HisGranAha agent = new HisGranAha();
+        agent.setBeliefTracker(new BeliefTracker());
+        return agent;
+    }
+
+    /**
+     * Sets the tracker keeping the possible cards of our hand up to date across turns, used instead of
+     * working out the possible cards of every slot again on each move.
+     * @param beliefTracker The tracker to use, or null to work out the possible cards on each move.
+     */
+    public void setBeliefTracker(BeliefTracker beliefTracker) {
+        this.beliefTracker = beliefTracker;
+    }
+
+    /**
+     * Sets whether equivalent tells (same player, same touched slots) are searched as a single action.
+     * @param abstractActions True to search a single action per equivalence class.
+     */
+    public void setAbstractActions(boolean abstractActions) {
+        this.abstractActions = abstractActions;
+    }
+
+    /**
+     * Sets the fixed time spent on every move when there is no time manager.
+     * @param moveTime The time (in milliseconds) the agent can spend searching on each move.
+     */
+    public void setMoveTime(int moveTime) {
+        this.timeLimit = moveTime;
+    }
+
+    /**
+     * Sets the time manager deciding how long each move can take.
+     * @param timeManager The time manager to use, or null to spend a fixed time on every move.
+     */
+    public void setTimeManager(TimeManager timeManager) {
+        this.timeManager = timeManager;
+    }
+
+    /**
+     * Enables or disables the recording of the root visit distribution of each move as training
+     * examples for self-play.
+     * @param recordExamples Whether to record the examples.
+     */
+    public void setRecordExamples(boolean recordExamples) {
+        this.recordedExamples = recordExamples ? new ArrayList<>() : null;
+    }
+
+    /**
+     * Returns the examples recorded since the last call to this method and forgets about them.
+     * @return The recorded examples, whose values still have to be set to the outcome of the game.
+     */
+    public List<SelfPlayExample> drainExamples() {
+        if (recordedExamples == null)
+            return Collections.emptyList();
+
+        List<SelfPlayExample> examples = recordedExamples;
+        recordedExamples = new ArrayList<>();
+        return examples;
+    }
+
+    /**
+     * Replaces the neural network by a copy of the one in the registry if a newer model was promoted.
+     * This only happens between moves, so a search always uses a single model.
+     */
+    private void swapModelIfPromoted() {
+        if (modelRegistry != null && (nn == null || modelRegistry.getVersion() != modelVersion)) {
+            modelVersion = modelRegistry.getVersion();
+            nn = modelRegistry.copyCurrent();
+        }
+    }
+
     /**
      * Action that is triggered when is the turn of this agent to make a move in the game.
      * @param agentID The Id (position) of the agent within the current game.
@@ -49,49 +315,233 @@ public class HisGranAha implements Agent {
      */
     @Override
     public Action doMove(int agentID, GameState state) {
-        // Initialize variables.
+        // Initialize variables, unless they were filled by pondering since our last move.
+        if (pondering) {
+            ponderer.stop();
+            pondering = false;
+        } else {
+            resetSearch();
+        }
+        swapModelIfPromoted();
+        lastIterations = 0;
+
+        int agentOffset = ActionIds.getPlayerOffset(agentID, agentID, state.getPlayerCount());
+        NNState nnState = new NNState(state, agentOffset);
+        OpeningBook.Entry bookEntry = openingBook == null ? null : openingBook.lookup(state, agentID);
+        if (bookEntry != null) {
+            Action bookAction = ActionIds.getAction(bookEntry.getBestActionId(), agentID, state.getPlayerCount());
+            if (bookEntry.isDominant(OpeningBook.DEFAULT_DOMINANCE, OpeningBook.DEFAULT_MIN_VISITS) && bookAction.isLegal(agentID, state))
+                return bookAction;
+
+            // Start the search from the statistics of the book rather than from scratch. A book entry merges deals in
+            // which other moves were legal, so only the moves legal here are seeded.
+            seedRoot(nnState, bookEntry, agentID, state);
+        }
+
+        long startTime = System.currentTimeMillis();
+        long moveTime = timeManager == null ? timeLimit : timeManager.getMoveBudget(state, agentID);
+        long finishTime = startTime + moveTime;
+        int visitedBefore = visitedStates.size();
+        if (telemetryListener != null) {
+            telemetry = new SearchTelemetry(agentName, agentID, state.getActionHistory().size());
+        }
+
+        Map<Integer, List<Card>> possibleCards = null;
+        List<Integer> bindOrder = null;
+        if (beliefTracker != null) {
+            // The tracker only processes what changed since our last move.
+            beliefTracker.update(agentID, state);
+        } else {
+            // Map each slot in the hand to the list of possible cards that could be in it.
+            possibleCards = DeckUtils.bindCard(agentID, state.getHand(agentID), state.getDeck().toList());
+
+            // Order the slots according to the size of the list of possible cards. Slots with fewer possible cards
+            // will appear first in the list.
+            bindOrder = DeckUtils.bindOrder(possibleCards);
+        }
+
+        // Perform the MCTS tree search as long as we haven't exceeded the time threshold.
+        GameState world = null;
+        int worldUses = 0;
+        while (System.currentTimeMillis() < finishTime && (maxIterations == 0 || lastIterations < maxIterations)) {
+            // Randomly choose one of the possible cards for each slot and assign it to them, keeping the same
+            // assignment for a batch of iterations. A card that is selected to be in one slot is guaranteed to not
+            // be chosen to be in another one.
+            long determinizeStart = telemetry == null ? 0 : System.nanoTime();
+            if (worldUses == 0) {
+                world = state.getCopy();
+                determinize(world, agentID, possibleCards, bindOrder);
+            }
+            worldUses = (worldUses + 1) % Math.max(1, determinizationBatch);
+
+            // Within a batch, every iteration gets its own copy of the world with a freshly shuffled deck.
+            GameState stateCopy = determinizationBatch > 1 ? world.getCopy() : world;
+            stateCopy.getDeck().shuffle();
+            lastIterations++;
+
+            // Perform an iteration of the MCTS algorithm.
+            if (telemetry == null) {
+                search(stateCopy, nn, agentID, agentID);
+            } else {
+                long searchStart = System.nanoTime();
+                long nnBefore = telemetry.phaseNanos[SearchTelemetry.Phase.NN.ordinal()];
+                iterationDepth = 0;
+                search(stateCopy, nn, agentID, agentID);
+                // The time of the iteration not spent in the neural network is spent selecting through the tree.
+                long nnNanos = telemetry.phaseNanos[SearchTelemetry.Phase.NN.ordinal()] - nnBefore;
+                telemetry.addPhase(SearchTelemetry.Phase.DETERMINIZE, searchStart - determinizeStart);
+                telemetry.addPhase(SearchTelemetry.Phase.SELECT, System.nanoTime() - searchStart - nnNanos);
+                telemetry.recordDepth(iterationDepth - 1);
+            }
+        }
+
+        if (timeManager != null) {
+            timeManager.moveFinished(System.currentTimeMillis() - startTime, getRootClarity(nnState));
+        }
+        if (recordedExamples != null) {
+            recordExample(nnState);
+        }
+        Action chosenAction = getBestExploitationAction(nnState, agentID, state.getPlayerCount());
+        if (telemetry != null) {
+            finishTelemetry(nnState, visitedStates.size() - visitedBefore);
+        }
+        if (ponderer != null) {
+            startPondering(chosenAction, agentID, state, possibleCards, bindOrder);
+        }
+        return chosenAction;
+    }
+
+    /**
+     * Completes the telemetry of the move with the statistics of the root, and passes it to the
+     * listener. Pondering is not recorded.
+     * @param rootState The state at the root of the search.
+     * @param statesAdded The number of states evaluated for the first time on this move.
+     */
+    private void finishTelemetry(NNState rootState, int statesAdded) {
+        telemetry.iterations = lastIterations;
+        telemetry.nodesAllocated = statesAdded;
+        int[] freqOfActions = frequencyOfActions.get(rootState);
+        double[] qValuesOfActions = qValues.get(rootState);
+        if (freqOfActions != null && qValuesOfActions != null) {
+            System.arraycopy(freqOfActions, 0, telemetry.rootVisits, 0, NUM_ACTIONS);
+            System.arraycopy(qValuesOfActions, 0, telemetry.rootValues, 0, NUM_ACTIONS);
+        }
+        telemetry.finish();
+        telemetryListener.onMove(telemetry);
+        telemetry = null;
+    }
+
+    /**
+     * Forgets the statistics of the previous search, so that the next one starts from an empty tree.
+     */
+    protected void resetSearch() {
         visitedStates = new HashSet<>();
         policies = new HashMap<>();
         qValues = new HashMap<>();
         frequencyOfActions = new HashMap<>();
+    }
 
-        long finishTime = System.currentTimeMillis() + TIME_LIMIT;
+    /**
+     * Searches the states following the chosen move in the background until our next move. Each
+     * iteration determinizes our hand, applies the chosen move and performs an iteration of the MCTS
+     * algorithm from there, filling the tables for the other players' replies. The tables start
+     * empty, so that they only ever hold the states following our last move rather than growing
+     * over the whole game.
+     * @param chosenAction The action chosen on this move.
+     * @param agentID The Id (position) of the agent within the current game.
+     * @param state The current state of the game.
+     * @param possibleCards The list of possible cards of each slot in our hand.
+     * @param bindOrder The order in which the slots are bound.
+     */
+    private void startPondering(Action chosenAction, int agentID, GameState state,
+                                Map<Integer, List<Card>> possibleCards, List<Integer> bindOrder) {
+        // The state given to doMove keeps being updated by the game, so the background search works on a copy.
+        GameState ponderState = state.getCopy();
+        int playerCount = state.getPlayerCount();
+        resetSearch();
+
+        pondering = ponderer.start(state, () -> {
+            GameState world = ponderState.getCopy();
+            determinize(world, agentID, possibleCards, bindOrder);
+            world.getDeck().shuffle();
+
+            chosenAction.apply(agentID, world);
+            if (world.isGameOver())
+                return false;
+            search(world, nn, agentID, (agentID + 1) % playerCount);
+            return true;
+        });
+    }
 
-        // Map each slot in the hand to the list of possible cards that could be in it.
-        Map<Integer, List<Card>> possibleCards = DeckUtils.bindCard(agentID, state.getHand(agentID), state.getDeck().toList());
+    /**
+     * Randomly chooses the cards of our hand, from the belief tracker if there is one or from the
+     * possible cards of each slot otherwise, binds them and removes them from the deck.
+     * @param world The state to determinize.
+     * @param agentID The Id (position) of the agent within the current game.
+     * @param possibleCards The list of possible cards of each slot, when there is no belief tracker.
+     * @param bindOrder The order in which the slots are bound, when there is no belief tracker.
+     */
+    private void determinize(GameState world, int agentID, Map<Integer, List<Card>> possibleCards, List<Integer> bindOrder) {
+        if (beliefTracker != null) {
+            beliefTracker.bindHand(world, random);
+            return;
+        }
 
-        // Order the slots according to the size of the list of possible cards. Slots with fewer possible cards will
-        // appear first in the list.
-        List<Integer> bindOrder = DeckUtils.bindOrder(possibleCards);
+        // Randomly choose one of the possible cards for each slot and assign it to them.
+        Map<Integer, Card> cardsInHand = DeckUtils.bindCards(bindOrder, possibleCards);
 
-        // Perform the MCTS tree search as long as we haven't exceeded the time threshold.
-        while (System.currentTimeMillis() < finishTime) {
-            GameState stateCopy = state.getCopy();
-
-            // Randomly choose one of the possible cards for each slot and assign it to them.
-            // A card that is selected to be in one slot is guaranteed to not be chosen to be in another one.
-            Map<Integer, Card> cardsInHand = DeckUtils.bindCards(bindOrder, possibleCards);
-
-            Deck deck = stateCopy.getDeck();
-            Hand myHand = stateCopy.getHand(agentID);
-
-            // Iterate over all the slots and assign each selected possible card to the slots, but this time using the
-            // Hand object, so as to modify the game state. Also, remove each selected possible card from the Deck.
-            for (int slot = 0; slot < myHand.getSize(); slot++)
-            {
-                Card cardInHand = cardsInHand.get(slot);
-                myHand.bindCard(slot, cardInHand);
-                deck.remove(cardInHand);
-            }
-            deck.shuffle();
+        Deck deck = world.getDeck();
+        Hand myHand = world.getHand(agentID);
 
-            // Perform an iteration of the MCTS algorithm.
-            search(stateCopy, nn, agentID, agentID);
+        // Iterate over all the slots and assign each selected possible card to the slots, but this time using the
+        // Hand object, so as to modify the game state. Also, remove each selected possible card from the Deck.
+        for (int slot = 0; slot < myHand.getSize(); slot++)
+        {
+            Card cardInHand = cardsInHand.get(slot);
+            myHand.bindCard(slot, cardInHand);
+            deck.remove(cardInHand);
         }
+    }
 
-        int agentOffset = getPlayerOffset(agentID, agentID, state.getPlayerCount());
-        NNState nnState = new NNState(state, agentOffset);
-        return getBestExploitationAction(nnState, agentID, state.getPlayerCount());
+    /**
+     * Stops pondering and forgets about the tables it filled.
+     */
+    private void stopPondering() {
+        if (ponderer != null)
+            ponderer.stop();
+        pondering = false;
+    }
+
+    /**
+     * Calculates how clearly the search preferred one action over the others.
+     * @param rootState The state at the root of the search.
+     * @return The share of the root visits that went to the most visited action.
+     */
+    private double getRootClarity(NNState rootState) {
+        int[] freqOfActions = frequencyOfActions.get(rootState);
+        if (freqOfActions == null)
+            return 0;
+
+        int totalFreq = Arrays.stream(freqOfActions).sum();
+        int maxFreq = Arrays.stream(freqOfActions).max().orElse(0);
+        return totalFreq == 0 ? 0 : (double) maxFreq / totalFreq;
+    }
+
+    /**
+     * Records the visit distribution of the root of the search as the target policy of an example.
+     * @param rootState The state at the root of the search.
+     */
+    private void recordExample(NNState rootState) {
+        int[] freqOfActions = frequencyOfActions.get(rootState);
+        if (freqOfActions == null)
+            return;
+
+        int totalFreq = Arrays.stream(freqOfActions).sum();
+        double[] policy = new double[NUM_ACTIONS];
+        for (int i = 0; i < NUM_ACTIONS; i++) {
+            policy[i] = (double) freqOfActions[i] / totalFreq;
+        }
+        recordedExamples.add(new SelfPlayExample(rootState.getNormalizedFlattenedRepresentation(), policy));
     }
 
     /**
@@ -104,6 +554,7 @@ public class HisGranAha implements Agent {
      */
     protected double search(GameState state, NeuralNetwork nn, int thisAgentId, int nextAgentID) {
         // When on a terminal state, return the actual score of the game.
+        iterationDepth++;
         if (state.isGameOver()) {
             return state.getScore();
         }
@@ -111,35 +562,55 @@ public class HisGranAha implements Agent {
         // Create a NNState from the current state, i.e. simplified representation of the state understandable
         // by our neural network.
         int playerCount = state.getPlayerCount();
-        int agentOffset = getPlayerOffset(thisAgentId, nextAgentID, playerCount);
+        int agentOffset = ActionIds.getPlayerOffset(thisAgentId, nextAgentID, playerCount);
         NNState nnState = new NNState(state, agentOffset);
 
         // If we are currently in a leaf node, add it to the set of visited states, calculate the policy and
-        // value of that node using the neural network and returned the value.
-        if (!visitedStates.contains(nnState)) {
+        // value of that node using the neural network and returned the value. Once the deck is exhausted,
+        // the value is replaced by the exact result of the determinized endgame.
+        boolean visited = visitedStates.contains(nnState);
+        if (telemetry != null) {
+            telemetry.recordLookup(visited);
+        }
+        if (!visited) {
             visitedStates.add(nnState);
+            long predictStart = telemetry == null ? 0 : System.nanoTime();
             NeuralNetwork.NeuralNetworkOutput nnOutputs = nn.predict(nnState);
+            nnCalls++;
+            if (telemetry != null) {
+                telemetry.addPhase(SearchTelemetry.Phase.NN, System.nanoTime() - predictStart);
+            }
             policies.put(nnState, nnOutputs.policy);
+            if (endgameSolver != null && endgameSolver.canSolve(state)) {
+                return endgameSolver.solve(state, nextAgentID);
+            }
             return nnOutputs.value;
         }
 
         double maxUCB = -Double.MAX_VALUE;
         int bestActionId = -1;
 
-        // Get the legal actions that can be performed by the 'nextAgentID' given the current state.
-        Collection<Integer> legalActionIds = getPlayerLegalMoves(state, nextAgentID)
-                .stream()
-                .map(action -> getActionId(action, thisAgentId, playerCount))
-                .collect(Collectors.toCollection(ArrayList::new));
-
-        // Iterate over all legal actions Dds and find the one that leads to the greatest UCB value.
-        for (int legalActionId : legalActionIds) {
-            double qValue = qValues.getOrDefault(nnState, new double[NUM_ACTIONS])[legalActionId];
-            double policy = policies.getOrDefault(nnState, new double[NUM_ACTIONS])[legalActionId];
-            int[] freqOfActionsInState = frequencyOfActions.getOrDefault(nnState, new int[NUM_ACTIONS]);
-            int totalFreqOfActionsInState = Arrays.stream(freqOfActionsInState).sum();
-            double actionFreq = freqOfActionsInState[legalActionId];
-            double actionUCB = qValue + EXPLORATION_CONST * policy * Math.sqrt(totalFreqOfActionsInState) / (1 + actionFreq);
+        // Look up the statistics of the state once. A state that no action was taken from yet has no
+        // Q values nor frequencies, which count as 0.
+        double[] qValuesInState = qValues.get(nnState);
+        double[] policyInState = policies.get(nnState);
+        int[] freqOfActionsInState = frequencyOfActions.get(nnState);
+        int totalFreqOfActionsInState = 0;
+        if (freqOfActionsInState != null) {
+            for (int actionFreq : freqOfActionsInState) {
+                totalFreqOfActionsInState += actionFreq;
+            }
+        }
+        double sqrtTotalFreq = Math.sqrt(totalFreqOfActionsInState);
+
+        // Iterate over the legal actions that can be performed by the 'nextAgentID' given the current
+        // state and find the one that leads to the greatest UCB value.
+        for (Action legalAction : getPlayerLegalMoves(state, nextAgentID)) {
+            int legalActionId = ActionIds.getActionId(legalAction, thisAgentId, playerCount);
+            double qValue = qValuesInState == null ? 0 : qValuesInState[legalActionId];
+            double policy = policyInState == null ? 0 : policyInState[legalActionId];
+            double actionFreq = freqOfActionsInState == null ? 0 : freqOfActionsInState[legalActionId];
+            double actionUCB = qValue + EXPLORATION_CONST * policy * sqrtTotalFreq / (1 + actionFreq);
             if (actionUCB > maxUCB) {
                 maxUCB = actionUCB;
                 bestActionId = legalActionId;
@@ -149,7 +620,7 @@ public class HisGranAha implements Agent {
         // Based on the action Id, retrieve the best action that can be taken from the current state
         // and apply it to a copy of the state, so as to keep the current one (needed for the rest of
         // method) and the new one (used as a parameter for the recursive call on search).
-        Action bestAction = getAction(bestActionId, thisAgentId, playerCount);
+        Action bestAction = ActionIds.getAction(bestActionId, thisAgentId, playerCount);
         GameState nextState = state.getCopy();
         bestAction.apply(nextAgentID, nextState);
 
@@ -159,19 +630,37 @@ public class HisGranAha implements Agent {
         // Update the qValues by considering the value that was returned (back-propagated) from the
         // recursive search call. Also update N(s,a) by 1, where s is the current state and a is the action
         // that was taken (i.e. the one that had the highest UCB value).
-        double[] qValuesForState = qValues.getOrDefault(nnState, new double[NUM_ACTIONS]);
-        int[] freqOfActionsForState = frequencyOfActions.getOrDefault(nnState, new int[NUM_ACTIONS]);
+        // The tables are looked up again, as the recursive call may have reached the same state.
+        double[] qValuesForState = qValues.computeIfAbsent(nnState, key -> new double[NUM_ACTIONS]);
+        int[] freqOfActionsForState = frequencyOfActions.computeIfAbsent(nnState, key -> new int[NUM_ACTIONS]);
         int freqOfBestAction = freqOfActionsForState[bestActionId];
         qValuesForState[bestActionId] = (freqOfBestAction * qValuesForState[bestActionId] + value) / (freqOfBestAction + 1);
         freqOfActionsForState[bestActionId] = freqOfBestAction + 1;
 
-        qValues.put(nnState, qValuesForState);
-        frequencyOfActions.put(nnState, freqOfActionsForState);
-
         // Back-propagate the result obtained by calling search recursively.
         return value;
     }
 
+    /**
+     * Fills the tables of the root with the statistics of the book for the legal moves of the agent,
+     * leaving the other actions with no visits and a value of 0.
+     * @param nnState The state at the root of the search.
+     * @param bookEntry The statistics of the root position in the book.
+     * @param agentID The Id (position) of the agent to move.
+     * @param state The current state of the game.
+     */
+    private void seedRoot(NNState nnState, OpeningBook.Entry bookEntry, int agentID, GameState state) {
+        double[] values = new double[NUM_ACTIONS];
+        int[] visits = new int[NUM_ACTIONS];
+        for (Action action : getPlayerLegalMoves(state, agentID)) {
+            int actionId = ActionIds.getActionId(action, agentID, state.getPlayerCount());
+            values[actionId] = bookEntry.values[actionId];
+            visits[actionId] = bookEntry.visits[actionId];
+        }
+        qValues.put(nnState, values);
+        frequencyOfActions.put(nnState, visits);
+    }
+
     /**
      * Retrieves the legal moves that can be performed by an agent from a given state.
      * @param state The state from which legal moves are going to be calculated.
@@ -180,73 +669,17 @@ public class HisGranAha implements Agent {
      */
     protected Collection<Action> getPlayerLegalMoves(GameState state, int agentID) {
         Collection<Action> allPossibleActions = Utils.generateAllActions(agentID, state.getPlayerCount());
-        return allPossibleActions
-                .stream()
-                .filter(action -> action.isLegal(agentID, state))
-                .collect(Collectors.toList());
-    }
-
-    /**
-     * Retrieves the Id of a particular action.
-     * @param action The action whose Id is desired.
-     * @param thisAgentId The Id of this HisGranAha agent.
-     * @param playerCount The number of current players in the game.
-     * @return The Id of the desired action.
-     */
-    public int getActionId(Action action, int thisAgentId, int playerCount) {
-        if (action instanceof DiscardCard)
-            return ((DiscardCard) action).slot;
-        if (action instanceof PlayCard)
-            return 5 + ((PlayCard) action).slot;
-
-        int actionId = 0;
-        int playerToldId = 0;
-        if (action instanceof TellColour) {
-            actionId = 10 + ((TellColour) action).colour.ordinal();
-            playerToldId = ((TellColour) action).player;
-        }
-        else if (action instanceof TellValue) {
-            actionId = 15 + ((TellValue) action).value - 1;
-            playerToldId = ((TellValue) action).player;
-        }
-
-        int playerOffset = getPlayerOffset(thisAgentId, playerToldId, playerCount);
-        actionId = actionId + 10 * playerOffset;
-        return actionId;
-    }
-
-    /**
-     * Retrieves an action based on a given Id.
-     * @param actionId The Id of the action to be retrieved.
-     * @param thisAgentId The Id of this HisGranAha agent.
-     * @param playerCount The number of current players in the game.
-     * @return The action corresponding to the given Id.
-     */
-    public Action getAction(int actionId, int thisAgentId, int playerCount) {
-        if (actionId < 5)
-            return new DiscardCard(actionId);
-        if (actionId < 10)
-            return new PlayCard(actionId - 5);
-
-        int offset = actionId / 10 - 1;
-        int playerToTellId = (thisAgentId + offset) % playerCount;
-
-        if (actionId < 15 || (actionId >= 20 && actionId < 25) || (actionId >= 30 && actionId < 35) ||
-                (actionId >= 40 && actionId < 45) || (actionId >= 50 && actionId < 55)) {
-            int colourToTellId = actionId % 10;
-            CardColour colourToTell = null;
-            switch (colourToTellId) {
-                case 0: { colourToTell = CardColour.RED; break; }
-                case 1: { colourToTell = CardColour.BLUE; break; }
-                case 2: { colourToTell = CardColour.GREEN; break; }
-                case 3: { colourToTell = CardColour.ORANGE; break; }
-                case 4: { colourToTell = CardColour.WHITE; break; }
+        List<Action> legalActions = new ArrayList<>(allPossibleActions.size());
+        for (Action action : allPossibleActions) {
+            if (action.isLegal(agentID, state)) {
+                legalActions.add(action);
             }
-            return new TellColour(playerToTellId, colourToTell);
         }
-
-        int valueToTell = actionId % 10 - 4;
-        return new TellValue(playerToTellId, valueToTell);
+        if (abstractActions) {
+            // Equivalent tells lead to the same information, so only the first one of each class is kept.
+            return ActionAbstraction.getRepresentatives(legalActions, state);
+        }
+        return legalActions;
     }
 
     /**
@@ -270,20 +703,6 @@ public class HisGranAha implements Agent {
         }
 
         // Returns the best action.
-        return getAction(bestActionId, thisAgentId, playerCount);
-    }
-
-    /**
-     * Returns the position of a player with respect to this HisGranAha position (Id) in the game.
-     * @param thisAgentId The Id of this HisGranAha agent.
-     * @param playerId The Id of the player whose offset from this agent is desired.
-     * @param playerCount The number of current players in the game.
-     * @return The offset of the player with respect to this agent.
-     */
-    public int getPlayerOffset(int thisAgentId, int playerId, int playerCount) {
-        if (thisAgentId <= playerId)
-            return playerId - thisAgentId;
-        else
-            return playerCount - thisAgentId + playerId;
+        return ActionIds.getAction(bestActionId, thisAgentId, playerCount);
     }
 }
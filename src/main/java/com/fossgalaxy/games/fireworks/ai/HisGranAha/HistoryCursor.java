@@ -0,0 +1,78 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.HistoryEntry;
+
+import java.util.List;
+import java.util.ListIterator;
+import java.util.RandomAccess;
+
+/**
+ * Position in the action history of a game, so that each entry is processed exactly once however
+ * many moves happened since the last time the history was read.
+ *
+ * When the history gets shorter than the position of the cursor, a new game has started and the
+ * cursor goes back to its beginning.
+ */
+public class HistoryCursor {
+
+    /**
+     * Receives the entries of the history that were not processed yet.
+     */
+    public interface Listener {
+        void onEntry(HistoryEntry entry);
+    }
+
+    private int position;
+    private boolean newGame = true;
+
+    /**
+     * Pass every entry added to the history since the last call to a listener.
+     *
+     * @param history  the action history of the game
+     * @param listener the listener receiving the new entries, in order
+     * @return the number of new entries
+     */
+    public int advance(List<HistoryEntry> history, Listener listener) {
+        int size = history.size();
+        if (size < position) {
+            reset();
+        }
+
+        int start = position;
+        if (history instanceof RandomAccess) {
+            for (int i = start; i < size; i++) {
+                listener.onEntry(history.get(i));
+            }
+        } else if (start < size) {
+            ListIterator<HistoryEntry> entries = history.listIterator(start);
+            while (entries.hasNext()) {
+                listener.onEntry(entries.next());
+            }
+        }
+        position = size;
+        return size - start;
+    }
+
+    /**
+     * Move the cursor to the beginning of the history, for a new game.
+     */
+    public void reset() {
+        position = 0;
+        newGame = true;
+    }
+
+    /**
+     * Check whether the cursor was reset since the last call to this method.
+     *
+     * @return true the first time this is called in a game
+     */
+    public boolean startedNewGame() {
+        boolean started = newGame;
+        newGame = false;
+        return started;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+}
@@ -0,0 +1,71 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the telemetry of every move as a line of JSON, appending to a file. Several agents (and
+ * threads) can share a sink.
+ *
+ * Telemetry can be turned on without any code change, e.g. for agents built by name by the game
+ * runner, with {@code -Dhanabi.telemetry=search.jsonl}: every MCTS and HisGranAha agent then writes
+ * to a single sink on that path.
+ */
+public class JsonLinesTelemetrySink implements TelemetryListener, Closeable {
+    public static final String PATH_PROPERTY = "hanabi.telemetry";
+
+    private static JsonLinesTelemetrySink configured;
+    private static boolean configurationRead;
+
+    private final BufferedWriter writer;
+
+    /**
+     * @param path the path of the file, created if needed
+     * @throws IOException if the file could not be opened
+     */
+    public JsonLinesTelemetrySink(String path) throws IOException {
+        this.writer = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Get the sink shared by every agent when telemetry is turned on with the PATH_PROPERTY system property.
+     *
+     * @return the shared sink, or null if the property is not set or the file could not be opened
+     */
+    public static synchronized TelemetryListener getConfigured() {
+        if (!configurationRead) {
+            configurationRead = true;
+            String path = System.getProperty(PATH_PROPERTY);
+            if (path != null) {
+                try {
+                    configured = new JsonLinesTelemetrySink(path);
+                } catch (IOException e) {
+                    System.err.println("Could not open the telemetry file: " + e.getMessage());
+                }
+            }
+        }
+        return configured;
+    }
+
+    @Override
+    public synchronized void onMove(SearchTelemetry telemetry) {
+        try {
+            writer.write(telemetry.toJson());
+            writer.newLine();
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Could not write the telemetry: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
@@ -10,6 +10,7 @@ import com.fossgalaxy.games.fireworks.state.Card;
 import com.fossgalaxy.games.fireworks.state.Deck;
 import com.fossgalaxy.games.fireworks.state.GameState;
 import com.fossgalaxy.games.fireworks.state.Hand;
+import com.fossgalaxy.games.fireworks.state.HistoryEntry;
 import com.fossgalaxy.games.fireworks.state.actions.*;
 import com.fossgalaxy.games.fireworks.utils.DebugUtils;
 import org.slf4j.Logger;
@@ -20,6 +21,13 @@ import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * Created by WebPigeon on 09/08/2016.
@@ -29,7 +37,17 @@ public class MCTS implements Agent {
     public static final int DEFAULT_ROLLOUT_DEPTH = 18;
     public static final int DEFAULT_TREE_DEPTH_MUL = 1;
     public static final int NO_LIMIT = 100;
+    public static final int DEFAULT_MOVE_TIME = 950;
+    public static final double DEFAULT_WIDENING_CONSTANT = 2;
+    public static final double DEFAULT_WIDENING_EXPONENT = 0.5;
+    public static final int DEFAULT_DETERMINIZATION_BATCH = 4;
+    public static final int DEFAULT_MAX_NODES = 200_000;
+    // Share of the node budget the tree is brought back to when it exceeds the budget.
+    protected static final double EVICTION_TARGET = 0.75;
     protected static final boolean OLD_UCT_BEHAVIOUR = false;
+    // Rollout pools shared by every agent, by number of threads, so that agents built for each game don't each leave
+    // a pool of idle threads behind.
+    private static final Map<Integer, ExecutorService> ROLLOUT_POOLS = new ConcurrentHashMap<>();
 
     protected final int roundLength;
     protected final int rolloutDepth;
@@ -38,10 +56,65 @@ public class MCTS implements Agent {
     protected final Logger logger = LoggerFactory.getLogger(MCTS.class);
 
     private final boolean calcTree = false;
-    private final boolean generateExamples = false;
+    private boolean generateExamples;
     private final String outputFile = "training_data.csv";
     private BufferedWriter fileWriter;
 
+    protected int moveTime = DEFAULT_MOVE_TIME;
+    protected TimeManager timeManager;
+    protected RootActionFilter rootActionFilter;
+    protected boolean abstractActions;
+
+    protected boolean useTranspositions;
+    protected boolean useRave;
+    protected boolean compactRollouts;
+    protected boolean progressiveWidening;
+    protected double wideningConstant = DEFAULT_WIDENING_CONSTANT;
+    protected double wideningExponent = DEFAULT_WIDENING_EXPONENT;
+    protected ActionPrior actionPrior;
+    protected EndgameSolver endgameSolver;
+    protected OpeningBook openingBook;
+    // Number of rollouts launched from each selected node, and the shared pool running them (null to run them in turn).
+    protected int leafRollouts = 1;
+    protected ExecutorService rolloutExecutor;
+    // Number of consecutive iterations sharing the same cards in our hand; only the deck is reshuffled between them.
+    protected int determinizationBatch = 1;
+    // Maximum number of iterations per move (0 for no limit other than time), and the iterations of the last move.
+    protected int maxIterations;
+    protected int lastIterations;
+
+    // Maximum number of nodes in the tree (0 for no limit), number of nodes in the current tree and iterations so far.
+    protected int maxNodes;
+    protected int nodeCount;
+    protected int iteration;
+
+    protected BeliefTracker beliefTracker;
+    protected OpponentModel opponentModel;
+    // Receives the telemetry of every move, and the telemetry of the current move (null when there is no listener).
+    protected TelemetryListener telemetryListener = JsonLinesTelemetrySink.getConfigured();
+    protected SearchTelemetry telemetry;
+    // The name of the agent in the current game, as recorded in the telemetry.
+    protected String agentName = "MCTS";
+    protected Ponderer ponderer;
+    // The child chosen on our last move, its action and the size of the history at that time, kept while pondering.
+    protected MCTSNode ponderNode;
+    protected Action ponderAction;
+    protected int ponderHistorySize;
+    protected MCTSNode lastRoot;
+
+    // Hash of the simulated state of the current iteration as seen by the searching agent, whose sampled cards are
+    // left out, only maintained while hashing states.
+    protected long currentHash;
+    protected int hashObserverID;
+    // Nodes of the current search by the hash of their state, and the path followed by the current iteration.
+    protected Map<Long, MCTSNode> transpositionTable;
+    protected List<MCTSNode> currentPath;
+    // Actions performed by the current iteration, only recorded when using RAVE.
+    protected ActionTrace currentTrace;
+    // Reused by every compact rollout, so that rollouts do not allocate.
+    protected final CompactState compactState = new CompactState();
+    protected final int[] compactActions = new int[ActionIds.NUM_ACTIONS];
+
     /**
      * Create a default MCTS implementation.
      * <p>
@@ -69,23 +142,450 @@ public class MCTS implements Agent {
         return new MCTS(MCTS.DEFAULT_ITERATIONS, MCTS.NO_LIMIT, MCTS.NO_LIMIT);
     }
 
+    @AgentBuilderStatic("mctsNDAdaptive")
+    public static MCTS buildMCTSNDAdaptive() {
+        MCTS mcts = buildMCTSND();
+        mcts.setTimeManager(new TimeManager());
+        return mcts;
+    }
+
+    @AgentBuilderStatic("mctsNDFiltered")
+    public static MCTS buildMCTSNDFiltered() {
+        MCTS mcts = buildMCTSND();
+        mcts.setRootActionFilter(new RootActionFilter());
+        return mcts;
+    }
+
+    @AgentBuilderStatic("mctsNDAbstract")
+    public static MCTS buildMCTSNDAbstract() {
+        MCTS mcts = buildMCTSND();
+        mcts.setAbstractActions(true);
+        return mcts;
+    }
+
+    @AgentBuilderStatic("mctsNDWidening")
+    public static MCTS buildMCTSNDWidening() {
+        MCTS mcts = buildMCTSND();
+        mcts.setProgressiveWidening(DEFAULT_WIDENING_CONSTANT, DEFAULT_WIDENING_EXPONENT, new HeuristicActionPrior());
+        return mcts;
+    }
+
+    /**
+     * Limit the number of children of a node to k * N^alpha, where N is the number of visits of the node.
+     * <p>
+     * While the limit is reached, UCT chooses among the existing children instead of expanding a new one.
+     *
+     * @param wideningConstant the constant k
+     * @param wideningExponent the exponent alpha
+     * @param actionPrior      the prior deciding the order in which actions are expanded, or null for a random order
+     */
+    public void setProgressiveWidening(double wideningConstant, double wideningExponent, ActionPrior actionPrior) {
+        this.progressiveWidening = true;
+        this.wideningConstant = wideningConstant;
+        this.wideningExponent = wideningExponent;
+        this.actionPrior = actionPrior;
+    }
+
+    /**
+     * Get the root of the tree built on the last move.
+     *
+     * @return the root of the last search, or null if no search was performed yet
+     */
+    public MCTSNode getLastRoot() {
+        return lastRoot;
+    }
+
+    @AgentBuilderStatic("mctsNDRave")
+    public static MCTS buildMCTSNDRave() {
+        MCTS mcts = buildMCTSND();
+        mcts.setUseRave(true);
+        return mcts;
+    }
+
+    /**
+     * Set whether the nodes keep all-moves-as-first statistics, updated with every action of the iteration
+     * (including the rollout), and blend them into the UCT value of their children.
+     *
+     * @param useRave true to use RAVE
+     */
+    public void setUseRave(boolean useRave) {
+        this.useRave = useRave;
+        checkRolloutWorkers();
+    }
+
+    @AgentBuilderStatic("mctsNDCompact")
+    public static MCTS buildMCTSNDCompact() {
+        MCTS mcts = buildMCTSND();
+        mcts.setCompactRollouts(true);
+        return mcts;
+    }
+
+    /**
+     * Set whether rollouts are simulated on a CompactState instead of the library GameState.
+     *
+     * @param compactRollouts true to use the compact simulation state for rollouts
+     */
+    public void setCompactRollouts(boolean compactRollouts) {
+        this.compactRollouts = compactRollouts;
+    }
+
+    @AgentBuilderStatic("mctsNDEndgame")
+    public static MCTS buildMCTSNDEndgame() {
+        MCTS mcts = buildMCTSND();
+        mcts.setEndgameSolver(new EndgameSolver());
+        return mcts;
+    }
+
+    /**
+     * Set the solver used to finish rollouts exactly once they reach the end of the deck.
+     *
+     * @param endgameSolver the solver to use, or null to always finish rollouts randomly
+     */
+    public void setEndgameSolver(EndgameSolver endgameSolver) {
+        this.endgameSolver = endgameSolver;
+        checkRolloutWorkers();
+    }
+
+    @AgentBuilderStatic("mctsNDBook")
+    public static MCTS buildMCTSNDBook() {
+        MCTS mcts = buildMCTSND();
+        mcts.setOpeningBook(OpeningBook.load(OpeningBook.DEFAULT_PATH));
+        return mcts;
+    }
+
+    /**
+     * Set the book looked up before searching. A dominant book move is played directly; otherwise the
+     * statistics of the book are used to start the search warm.
+     *
+     * @param openingBook the book to use, or null to always search from scratch
+     */
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    @AgentBuilderStatic("mctsNDLeafParallel")
+    public static MCTS buildMCTSNDLeafParallel() {
+        MCTS mcts = buildMCTSND();
+        int threads = Runtime.getRuntime().availableProcessors();
+        mcts.setLeafParallelism(threads, threads);
+        return mcts;
+    }
+
+    /**
+     * Launch several rollouts from each selected node and back up their mean score with a weight equal to their
+     * number, so that selecting and determinizing are paid once for all of them.
+     * <p>
+     * The worker threads are shared by all the agents using the same number of threads. Rollouts on the workers are
+     * plain random rollouts, so workers cannot be combined with the endgame solver, RAVE or the opponent model.
+     *
+     * @param leafRollouts the number of rollouts per selected node
+     * @param threads      the number of worker threads running the rollouts, or 1 to run them in the search thread
+     */
+    public void setLeafParallelism(int leafRollouts, int threads) {
+        this.leafRollouts = leafRollouts;
+        this.rolloutExecutor = threads > 1 ? ROLLOUT_POOLS.computeIfAbsent(threads, count -> Executors.newFixedThreadPool(count, runnable -> {
+            Thread thread = new Thread(runnable, "mcts-rollout");
+            thread.setDaemon(true);
+            return thread;
+        })) : null;
+        checkRolloutWorkers();
+    }
+
+    /**
+     * Reject the modes that the rollouts on the worker threads do not support, rather than silently ignoring them.
+     */
+    private void checkRolloutWorkers() {
+        if (rolloutExecutor != null && (endgameSolver != null || useRave || opponentModel != null)) {
+            throw new IllegalStateException("Rollouts on worker threads support neither the endgame solver, RAVE nor the opponent model");
+        }
+    }
+
+    @AgentBuilderStatic("mctsNDReuse")
+    public static MCTS buildMCTSNDReuse() {
+        MCTS mcts = buildMCTSND();
+        mcts.setDeterminizationBatch(DEFAULT_DETERMINIZATION_BATCH);
+        return mcts;
+    }
+
+    /**
+     * Keep the same cards in our hand for a batch of consecutive iterations, only reshuffling the deck between them.
+     * <p>
+     * This saves binding the hand on most iterations, at the cost of correlating the iterations of a batch (and so a
+     * little more strategy fusion); see DeterminizationReuseBenchmark.
+     *
+     * @param determinizationBatch the number of iterations per determinization, 1 to determinize on every iteration
+     */
+    public void setDeterminizationBatch(int determinizationBatch) {
+        this.determinizationBatch = determinizationBatch;
+    }
+
+    /**
+     * Stop searching after a fixed number of iterations, even if there is time left. Together with a generous time
+     * budget, this makes the strength of the agent independent of the speed of the machine.
+     *
+     * @param maxIterations the maximum number of iterations per move, or 0 to only stop when the time is up
+     */
+    public void setMaxIterations(int maxIterations) {
+        this.maxIterations = maxIterations;
+    }
+
+    /**
+     * Record the telemetry of every search (iterations, nodes, depths, time per phase, cache hits, GC time and root
+     * statistics) and pass it to a listener at the end of each move. By default, this is the sink of
+     * JsonLinesTelemetrySink.getConfigured, if telemetry was turned on with a system property.
+     *
+     * @param telemetryListener the listener receiving the telemetry, or null to record nothing
+     */
+    public void setTelemetryListener(TelemetryListener telemetryListener) {
+        this.telemetryListener = telemetryListener;
+    }
+
+    /**
+     * Get the number of iterations of the last search.
+     *
+     * @return the number of iterations performed on the last move
+     */
+    public int getLastIterations() {
+        return lastIterations;
+    }
+
+    @AgentBuilderStatic("mctsNDPonder")
+    public static MCTS buildMCTSNDPonder() {
+        MCTS mcts = buildMCTSND();
+        mcts.setPonderer(new Ponderer());
+        return mcts;
+    }
+
+    /**
+     * Keep searching the subtree of the chosen move while the other players take their turns, and start the next
+     * search from the node reached by their actual moves.
+     *
+     * @param ponderer the ponderer running the background search, or null to stay idle between moves
+     */
+    public void setPonderer(Ponderer ponderer) {
+        stopPondering();
+        this.ponderer = ponderer;
+    }
+
+    @Override
+    public void receiveID(int agentID, String[] names) {
+        agentName = names[agentID];
+        // A new game is starting, so whatever was pondered or tracked belongs to the previous one.
+        stopPondering();
+        if (beliefTracker != null) {
+            beliefTracker.reset();
+        }
+        if (opponentModel != null) {
+            opponentModel.setPlayers(agentID, names);
+        }
+    }
+
+    @AgentBuilderStatic("mctsNDBelief")
+    public static MCTS buildMCTSNDBelief() {
+        MCTS mcts = buildMCTSND();
+        mcts.setBeliefTracker(new BeliefTracker());
+        return mcts;
+    }
+
+    /**
+     * Set the tracker keeping the possible cards of our hand up to date across turns, used instead of working out
+     * the possible cards of every slot again on each move.
+     *
+     * @param beliefTracker the tracker to use, or null to work out the possible cards on each move
+     */
+    public void setBeliefTracker(BeliefTracker beliefTracker) {
+        this.beliefTracker = beliefTracker;
+    }
+
+    @AgentBuilderStatic("mctsNDOpponentModel")
+    public static MCTS buildMCTSNDOpponentModel() {
+        MCTS mcts = buildMCTSND();
+        OpponentModel opponentModel = OpponentModel.fromSystemProperty();
+        mcts.setOpponentModel(opponentModel);
+        mcts.setProgressiveWidening(DEFAULT_WIDENING_CONSTANT, DEFAULT_WIDENING_EXPONENT, opponentModel);
+        return mcts;
+    }
+
+    /**
+     * Set the model of the other players, learned from their moves across games, from which their moves are sampled
+     * during rollouts. The model can also be given to setProgressiveWidening to order the expansion of their moves.
+     *
+     * @param opponentModel the model to use, or null to play uniformly random moves for everyone
+     */
+    public void setOpponentModel(OpponentModel opponentModel) {
+        this.opponentModel = opponentModel;
+        checkRolloutWorkers();
+    }
+
+    @AgentBuilderStatic("mctsNDCapped")
+    public static MCTS buildMCTSNDCapped() {
+        MCTS mcts = buildMCTSND();
+        mcts.setMaxNodes(DEFAULT_MAX_NODES);
+        return mcts;
+    }
+
+    /**
+     * Cap the number of nodes of the tree. When the cap is exceeded, the least visited subtrees (the least recently
+     * visited among equally visited ones) are collapsed into their parents until the tree is back to 3/4 of the cap.
+     *
+     * @param maxNodes the maximum number of nodes, or 0 for no limit
+     */
+    public void setMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Get the number of nodes of the current tree.
+     *
+     * @return the number of nodes created and not evicted in the last search
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    @AgentBuilderStatic("mctsNDTransposition")
+    public static MCTS buildMCTSNDTransposition() {
+        MCTS mcts = buildMCTSND();
+        mcts.setUseTranspositions(true);
+        return mcts;
+    }
+
+    /**
+     * Set whether nodes reached by different orderings of moves are shared, turning the tree into a DAG.
+     * <p>
+     * States are keyed by their hash as seen by the searching agent, leaving out the cards sampled for its hand and
+     * the order of the deck, so that the same node is found whatever the determinization of the iteration.
+     *
+     * @param useTranspositions true to look up the state hash in a transposition table before expanding
+     */
+    public void setUseTranspositions(boolean useTranspositions) {
+        this.useTranspositions = useTranspositions;
+    }
+
+    /**
+     * Set whether equivalent tells (same player, same touched slots) share a single child.
+     *
+     * @param abstractActions true to expand a single action per equivalence class
+     */
+    public void setAbstractActions(boolean abstractActions) {
+        this.abstractActions = abstractActions;
+    }
+
+    /**
+     * Set the filter applied to the actions at the root before searching.
+     *
+     * @param rootActionFilter the filter to use, or null to search all the actions
+     */
+    public void setRootActionFilter(RootActionFilter rootActionFilter) {
+        this.rootActionFilter = rootActionFilter;
+    }
+
+    /**
+     * Set whether the visits of the search tree are written to the training data file after every move, one example
+     * per distinct state (by hash) of the tree.
+     *
+     * @param generateExamples true to write training examples
+     */
+    public void setGenerateExamples(boolean generateExamples) {
+        this.generateExamples = generateExamples;
+    }
+
+    /**
+     * Set the fixed time spent on every move when there is no time manager.
+     *
+     * @param moveTime the time (in milliseconds) to search on each move
+     */
+    public void setMoveTime(int moveTime) {
+        this.moveTime = moveTime;
+    }
+
+    /**
+     * Set the time manager deciding how long each move can take.
+     *
+     * @param timeManager the time manager to use, or null to spend a fixed time on every move
+     */
+    public void setTimeManager(TimeManager timeManager) {
+        this.timeManager = timeManager;
+    }
+
     @Override
     public Action doMove(int agentID, GameState state) {
-        long finishTime = System.currentTimeMillis() + 950;
-        MCTSNode root = new MCTSNode(
-                (agentID + state.getPlayerCount() - 1) % state.getPlayerCount(),
-                null,
-                Utils.generateAllActions(agentID, state.getPlayerCount())
-        );
+        lastIterations = 0;
+        MCTSNode ponderedRoot = null;
+        if (ponderNode != null) {
+            ponderer.stop();
+            ponderedRoot = findPonderedRoot(agentID, state);
+            ponderNode = null;
+        }
+        if (opponentModel != null) {
+            // Learn from the moves made by everyone since our last move.
+            opponentModel.update(state);
+        }
 
-        // Map each slot in the hand to the list of possible cards that could be in it.
-        Map<Integer, List<Card>> possibleCards = DeckUtils.bindCard(agentID, state.getHand(agentID), state.getDeck().toList());
+        Collection<Action> rootActions = Utils.generateAllActions(agentID, state.getPlayerCount());
+        if (rootActionFilter != null) {
+            Action forcedAction = rootActionFilter.getForcedAction(agentID, state);
+            if (forcedAction != null) {
+                return forcedAction;
+            }
+            rootActions = rootActionFilter.filter(agentID, state, rootActions);
+        }
 
-        // Order the slots according to the size of the list of possible cards. Slots with fewer possible cards will
-        // appear first in the list.
-        List<Integer> bindOrder = DeckUtils.bindOrder(possibleCards);
+        OpeningBook.Entry bookEntry = openingBook == null ? null : openingBook.lookup(state, agentID);
+        if (bookEntry != null && bookEntry.isDominant(OpeningBook.DEFAULT_DOMINANCE, OpeningBook.DEFAULT_MIN_VISITS)) {
+            Action bookAction = ActionIds.getAction(bookEntry.getBestActionId(), agentID, state.getPlayerCount());
+            if (rootActions.contains(bookAction) && bookAction.isLegal(agentID, state)) {
+                return bookAction;
+            }
+        }
 
-        if (logger.isTraceEnabled()) {
+        long startTime = System.currentTimeMillis();
+        if (telemetryListener != null) {
+            telemetry = new SearchTelemetry(agentName, agentID, state.getActionHistory().size());
+        }
+        long finishTime = startTime + (timeManager == null ? moveTime : timeManager.getMoveBudget(state, agentID));
+        // The pondered tree was built without the root filter and the book, so it is only reused without them.
+        MCTSNode root;
+        if (ponderedRoot != null && rootActionFilter == null && bookEntry == null) {
+            root = ponderedRoot;
+            adoptRoot(root);
+        } else {
+            root = new MCTSNode(
+                    (agentID + state.getPlayerCount() - 1) % state.getPlayerCount(),
+                    null,
+                    rootActions
+            );
+            nodeCount = 1;
+            if (useTranspositions) {
+                transpositionTable = new HashMap<>();
+            }
+        }
+        lastRoot = root;
+        if (bookEntry != null) {
+            seedRoot(root, bookEntry, agentID, state);
+        }
+        if (isTrackingPath()) {
+            currentPath = new ArrayList<>();
+        }
+        if (useRave) {
+            currentTrace = new ActionTrace();
+        }
+
+        Map<Integer, List<Card>> possibleCards = null;
+        List<Integer> bindOrder = null;
+        if (beliefTracker != null) {
+            // The tracker only processes what changed since our last move.
+            beliefTracker.update(agentID, state);
+        } else {
+            // Map each slot in the hand to the list of possible cards that could be in it.
+            possibleCards = DeckUtils.bindCard(agentID, state.getHand(agentID), state.getDeck().toList());
+
+            // Order the slots according to the size of the list of possible cards. Slots with fewer possible cards
+            // will appear first in the list.
+            bindOrder = DeckUtils.bindOrder(possibleCards);
+        }
+
+        if (logger.isTraceEnabled() && possibleCards != null) {
             logger.trace("Possible bindings: ");
             possibleCards.forEach((slot, cards) -> logger.trace("\t {} {}", slot, DebugUtils.getHistStr(DebugUtils.histogram(cards))));
 
@@ -104,29 +604,31 @@ public class MCTS implements Agent {
             DebugUtils.printTable(logger, state);
         }
 
-        while(System.currentTimeMillis() < finishTime){
-            GameState currentState = state.getCopy();
-            IterationObject iterationObject = new IterationObject(agentID);
-
-            // Randomly choose one of the possible cards for each slot and assign it to them.
-            // A card that is selected to be in one slot is guaranteed to not be chosen to be in another one.
-            Map<Integer, Card> cardsInHand = DeckUtils.bindCards(bindOrder, possibleCards);
-
-            Deck deck = currentState.getDeck();
-            Hand myHand = currentState.getHand(agentID);
+        GameState world = null;
+        int worldUses = 0;
+        while(System.currentTimeMillis() < finishTime && (maxIterations == 0 || lastIterations < maxIterations)){
+            // Randomly choose one of the possible cards for each slot and assign it to them, keeping the same
+            // assignment for a batch of iterations. A card that is selected to be in one slot is guaranteed to not be
+            // chosen to be in another one.
+            long determinizeStart = telemetry == null ? 0 : System.nanoTime();
+            if (worldUses == 0) {
+                world = state.getCopy();
+                determinize(world, agentID, possibleCards, bindOrder);
+            }
+            worldUses = (worldUses + 1) % Math.max(1, determinizationBatch);
 
-            // Iterate over all the slots and assign each selected possible card to the slots, but this time using the
-            // Hand object. Also, remove each selected possible card from the Deck.
-            for (int slot = 0; slot < myHand.getSize(); slot++) {
-                Card cardInHand = cardsInHand.get(slot);
-                myHand.bindCard(slot, cardInHand);
-                deck.remove(cardInHand);
+            // Within a batch, every iteration gets its own copy of the world with a freshly shuffled deck, except
+            // the last one, which can use up the world itself. A deck of one card has nothing to shuffle.
+            GameState currentState = worldUses == 0 ? world : world.getCopy();
+            if (currentState.getDeck().getCardsLeft() > 1) {
+                currentState.getDeck().shuffle();
+            }
+            lastIterations++;
+            if (telemetry != null) {
+                telemetry.addPhase(SearchTelemetry.Phase.DETERMINIZE, System.nanoTime() - determinizeStart);
             }
-            deck.shuffle();
 
-            MCTSNode current = select(root, currentState, iterationObject);
-            int score = rollout(currentState, current);
-            current.backup(score);
+            runIteration(root, currentState, agentID);
             if(calcTree){
                 System.err.println(root.printD3());
             }
@@ -136,13 +638,14 @@ public class MCTS implements Agent {
         if (generateExamples) {
             try {
                 root.setGameState(state.getCopy());
+                root.setStateHash(ZobristHash.hash(state, agentID, agentID));
                 File file = new File(outputFile);
                 boolean fileExisted = file.exists();
                 this.fileWriter = new BufferedWriter(new FileWriter(outputFile, true));
                 if (!fileExisted) {
                     writeColumnNames();
                 }
-                generateExamples(root, agentID);
+                generateExamples(root, agentID, new HashSet<>());
                 this.fileWriter.close();
             } catch (IOException e) {
                 System.err.println(e.getMessage());
@@ -164,14 +667,330 @@ public class MCTS implements Agent {
             }
         }
 
-        Action chosenOne = root.getBestNode().getAction();
+        if (timeManager != null) {
+            timeManager.moveFinished(System.currentTimeMillis() - startTime, getRootClarity(root));
+        }
+
+        MCTSNode chosenNode = root.getBestNode();
+        Action chosenOne = root.getEdgeAction(chosenNode);
         if (logger.isTraceEnabled()) {
             logger.trace("Move Chosen by {} was {}", agentID, chosenOne);
             root.printChildren();
         }
+        if (telemetry != null) {
+            finishTelemetry(root, agentID, state.getPlayerCount());
+        }
+        if (ponderer != null) {
+            startPondering(chosenNode, chosenOne, agentID, state, possibleCards, bindOrder);
+        }
         return chosenOne;
     }
 
+    /**
+     * Perform one iteration of the search (select, rollout and backup) from a node.
+     *
+     * @param from         the node to start selecting from
+     * @param currentState the determinized state of the node, which is modified
+     * @param agentID      the agent performing the search
+     */
+    protected void runIteration(MCTSNode from, GameState currentState, int agentID) {
+        IterationObject iterationObject = new IterationObject(agentID);
+        int playerCount = currentState.getPlayerCount();
+        iteration++;
+
+        if (isHashingStates()) {
+            hashObserverID = agentID;
+            currentHash = ZobristHash.hash(currentState, (from.getAgent() + 1) % playerCount, agentID);
+        }
+
+        if (isTrackingPath()) {
+            currentPath.clear();
+            currentPath.add(from);
+        }
+        if (useRave) {
+            currentTrace.clear();
+        }
+
+        if (telemetry != null) {
+            runMeasuredIteration(from, currentState, iterationObject);
+        } else {
+            MCTSNode current = select(from, currentState, iterationObject);
+            int rolloutCount = Math.max(1, leafRollouts);
+            double score = rolloutCount > 1 ? batchRollout(currentState, current) : rollout(currentState, current);
+            backup(current, score, rolloutCount, playerCount);
+        }
+        if (maxNodes > 0 && nodeCount > maxNodes) {
+            evict(lastRoot);
+        }
+    }
+
+    /**
+     * Back up the result of the rollouts of a node, along the path of the iteration when nodes are shared.
+     */
+    protected void backup(MCTSNode current, double score, int rolloutCount, int playerCount) {
+        if (useTranspositions) {
+            MCTSNode.backupPath(currentPath, score, rolloutCount);
+        } else {
+            current.backup(score, rolloutCount);
+        }
+        if (useRave) {
+            backupAmaf(playerCount, score);
+        }
+    }
+
+    /**
+     * Perform the select, rollout and backup steps of an iteration as runIteration does, timing each of them and
+     * recording the depth reached in the telemetry of the move.
+     */
+    protected void runMeasuredIteration(MCTSNode from, GameState currentState, IterationObject iterationObject) {
+        long expandBefore = telemetry.phaseNanos[SearchTelemetry.Phase.EXPAND.ordinal()];
+        long start = System.nanoTime();
+        MCTSNode current = select(from, currentState, iterationObject);
+        long selected = System.nanoTime();
+        // Expansion happens within selection and is timed on its own.
+        long expandNanos = telemetry.phaseNanos[SearchTelemetry.Phase.EXPAND.ordinal()] - expandBefore;
+        telemetry.addPhase(SearchTelemetry.Phase.SELECT, selected - start - expandNanos);
+        telemetry.recordDepth(current.getDepth() - from.getDepth());
+
+        int rolloutCount = Math.max(1, leafRollouts);
+        double score = rolloutCount > 1 ? batchRollout(currentState, current) : rollout(currentState, current);
+        long rolledOut = System.nanoTime();
+        telemetry.addPhase(SearchTelemetry.Phase.ROLLOUT, rolledOut - selected);
+
+        backup(current, score, rolloutCount, currentState.getPlayerCount());
+        telemetry.addPhase(SearchTelemetry.Phase.BACKUP, System.nanoTime() - rolledOut);
+    }
+
+    /**
+     * Complete the telemetry of the move with the statistics of the root, and pass it to the listener.
+     */
+    protected void finishTelemetry(MCTSNode root, int agentID, int playerCount) {
+        telemetry.iterations = lastIterations;
+        for (MCTSNode child : root.getChildren()) {
+            int actionId = ActionIds.getActionId(root.getEdgeAction(child), agentID, playerCount);
+            telemetry.rootVisits[actionId] = child.getVisits();
+            telemetry.rootValues[actionId] = child.getVisits() == 0 ? 0 : child.getScore() / child.getVisits();
+        }
+        telemetry.finish();
+        telemetryListener.onMove(telemetry);
+        // Pondering is not recorded.
+        telemetry = null;
+    }
+
+    /**
+     * Collapse subtrees until the tree is back under the eviction target. The subtrees of the least visited nodes
+     * go first, and among equally visited nodes the ones the search has not gone through for the longest time.
+     * With transpositions, nodes still linked from outside a collapsed subtree stay in the tree and in the table.
+     *
+     * @param root the root of the tree, which is never collapsed itself
+     */
+    protected void evict(MCTSNode root) {
+        List<MCTSNode> candidates = new ArrayList<>();
+        Set<MCTSNode> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<MCTSNode> toVisit = new ArrayDeque<>();
+        toVisit.push(root);
+        while (!toVisit.isEmpty()) {
+            MCTSNode node = toVisit.pop();
+            if (!seen.add(node)) {
+                continue;
+            }
+            if (node != root && !node.isLeaf()) {
+                candidates.add(node);
+            }
+            for (MCTSNode child : node.getChildren()) {
+                toVisit.push(child);
+            }
+        }
+        candidates.sort(Comparator.comparingInt(MCTSNode::getVisits).thenComparingInt(MCTSNode::getLastVisited));
+
+        int target = (int) (maxNodes * EVICTION_TARGET);
+        Set<MCTSNode> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (MCTSNode node : candidates) {
+            if (nodeCount <= target) {
+                break;
+            }
+            // Nodes inside a subtree that was already collapsed are gone.
+            if (removed.contains(node)) {
+                continue;
+            }
+            for (MCTSNode evicted : node.collapse()) {
+                removed.add(evicted);
+                nodeCount--;
+                if (useTranspositions) {
+                    transpositionTable.remove(getTranspositionKey(evicted.getStateHash(), evicted.getDepth()), evicted);
+                }
+            }
+        }
+    }
+
+    /**
+     * Search the subtree of the chosen move in the background until our next move.
+     * <p>
+     * Each iteration determinizes our hand, applies the chosen move (which reveals the played or discarded card of
+     * that determinization) and searches from the chosen child, so the other players' replies get explored.
+     */
+    protected void startPondering(MCTSNode chosenNode, Action chosenAction, int agentID, GameState state,
+                                  Map<Integer, List<Card>> possibleCards, List<Integer> bindOrder) {
+        // The state given to doMove keeps being updated by the game, so the background search works on a copy.
+        GameState ponderState = state.getCopy();
+        ponderNode = chosenNode;
+        ponderAction = chosenAction;
+        ponderHistorySize = state.getActionHistory().size();
+
+        boolean started = ponderer.start(state, () -> {
+            GameState world = ponderState.getCopy();
+            determinize(world, agentID, possibleCards, bindOrder);
+            world.getDeck().shuffle();
+            chosenAction.apply(agentID, world);
+            if (world.isGameOver()) {
+                return false;
+            }
+            runIteration(chosenNode, world, agentID);
+            return true;
+        });
+        if (!started) {
+            ponderNode = null;
+        }
+    }
+
+    /**
+     * Follow the moves played since our last move down the pondered tree.
+     *
+     * @param agentID the agent to move
+     * @param state   the current state of the game
+     * @return the node reached, or null if the moves left the pondered tree
+     */
+    protected MCTSNode findPonderedRoot(int agentID, GameState state) {
+        List<HistoryEntry> history = state.getActionHistory();
+        if (history.size() <= ponderHistorySize) {
+            return null;
+        }
+
+        MCTSNode node = null;
+        for (int i = ponderHistorySize; i < history.size(); i++) {
+            HistoryEntry entry = history.get(i);
+            // Negative entries are game events that don't belong to any player.
+            if (entry.playerID < 0) {
+                continue;
+            }
+            if (node == null) {
+                // The first move is the one we chose.
+                if (entry.playerID != agentID || !entry.action.equals(ponderAction)) {
+                    return null;
+                }
+                node = ponderNode;
+            } else {
+                node = node.getChild(entry.action);
+                if (node == null) {
+                    return null;
+                }
+            }
+        }
+
+        int playerCount = state.getPlayerCount();
+        return node != null && node.getAgent() == (agentID + playerCount - 1) % playerCount ? node : null;
+    }
+
+    /**
+     * Reuse a node of the pondered tree as the root of the search.
+     *
+     * @param root the node to reuse
+     */
+    protected void adoptRoot(MCTSNode root) {
+        List<MCTSNode> nodes = root.detach();
+        nodeCount = nodes.size();
+        if (useTranspositions) {
+            // The keys depend on the depth, which was rebased.
+            transpositionTable = new HashMap<>();
+            for (MCTSNode node : nodes) {
+                if (node != root) {
+                    transpositionTable.put(getTranspositionKey(node.getStateHash(), node.getDepth()), node);
+                }
+            }
+        }
+    }
+
+    private void stopPondering() {
+        if (ponderer != null) {
+            ponderer.stop();
+        }
+        ponderNode = null;
+    }
+
+    /**
+     * Randomly choose the cards of our hand, from the belief tracker if there is one or from the possible cards of
+     * each slot otherwise, and bind them.
+     *
+     * @param world         the state to determinize
+     * @param agentID       the agent whose hand is bound
+     * @param possibleCards the possible cards of each slot, when there is no belief tracker
+     * @param bindOrder     the order in which the slots are bound, when there is no belief tracker
+     */
+    protected void determinize(GameState world, int agentID, Map<Integer, List<Card>> possibleCards, List<Integer> bindOrder) {
+        if (beliefTracker != null) {
+            beliefTracker.bindHand(world, random);
+        } else {
+            bindHand(world, agentID, DeckUtils.bindCards(bindOrder, possibleCards));
+        }
+    }
+
+    /**
+     * Bind the cards chosen for the hand of an agent and remove them from the deck.
+     *
+     * @param state       the state to modify
+     * @param agentID     the agent whose hand is bound
+     * @param cardsInHand the card chosen for each slot
+     */
+    protected static void bindHand(GameState state, int agentID, Map<Integer, Card> cardsInHand) {
+        Deck deck = state.getDeck();
+        Hand myHand = state.getHand(agentID);
+
+        // Iterate over all the slots and assign each selected possible card to the slots, but this time using the
+        // Hand object. Also, remove each selected possible card from the Deck.
+        for (int slot = 0; slot < myHand.getSize(); slot++) {
+            Card cardInHand = cardsInHand.get(slot);
+            myHand.bindCard(slot, cardInHand);
+            deck.remove(cardInHand);
+        }
+    }
+
+    /**
+     * Expand the children of the root that the book has statistics for, starting them with those statistics.
+     *
+     * @param root      the root of the search
+     * @param bookEntry the statistics of the root position in the book
+     * @param agentID   the agent to move
+     * @param state     the state of the game
+     */
+    protected void seedRoot(MCTSNode root, OpeningBook.Entry bookEntry, int agentID, GameState state) {
+        int playerCount = state.getPlayerCount();
+        for (Action action : new ArrayList<>(root.getLegalMoves(state, agentID))) {
+            int actionId = ActionIds.getActionId(action, agentID, playerCount);
+            if (bookEntry.visits[actionId] == 0) {
+                continue;
+            }
+
+            MCTSNode child = new MCTSNode(root, agentID, action, Utils.generateAllActions(agentID + 1, playerCount));
+            root.addChild(child);
+            nodeCount++;
+            child.seedStatistics(bookEntry.visits[actionId], bookEntry.values[actionId]);
+        }
+    }
+
+    /**
+     * Calculate how clearly the search preferred one action over the others.
+     *
+     * @param root the root of the search tree
+     * @return the share of the root visits that went to the most visited child
+     */
+    protected double getRootClarity(MCTSNode root) {
+        int maxVisits = 0;
+        for (MCTSNode child : root.getChildren()) {
+            maxVisits = Math.max(maxVisits, child.getVisits());
+        }
+        return root.getVisits() == 0 ? 0 : (double) maxVisits / root.getVisits();
+    }
+
     protected MCTSNode select(MCTSNode root, GameState state, IterationObject iterationObject) {
         MCTSNode current = root;
         int treeDepth = calculateTreeDepthLimit(state);
@@ -181,14 +1000,18 @@ public class MCTS implements Agent {
             MCTSNode next;
             // If all legal actions from the current node have been generated before, select the node at which we arrive
             // by using UCT for choosing the action we should take.
-            if (current.fullyExpanded(state)) {
-                next = current.getUCTNode(state);
+            if (isFullyExpanded(current, state) || !canWiden(current)) {
+                next = current.getUCTNode(state, useTranspositions);
             }
             // If at least one legal action has not been generated before, expand the current node and set the flag of
             // expanding a node to true.
             else {
+                long expandStart = telemetry == null ? 0 : System.nanoTime();
                 next = expand(current, state);
                 expandedNode = true;
+                if (telemetry != null) {
+                    telemetry.addPhase(SearchTelemetry.Phase.EXPAND, System.nanoTime() - expandStart);
+                }
             }
 
             if (next == null) {
@@ -196,19 +1019,31 @@ public class MCTS implements Agent {
                 // Ok to early return here - we will have applied current last time round the loop!
                 return current;
             }
+            // This is the action we perform for getting to the next state.
+            Action action = current.getEdgeAction(next);
+
             // Move one step further in the tree (we move to the node that resulted from the expansion operation or from
             // using the UCT method).
+            if (isTrackingPath() && next != current) {
+                currentPath.add(next);
+                if (useRave) {
+                    currentTrace.add(next.getAgent(), ActionIds.getActionId(action, next.getAgent(), state.getPlayerCount()));
+                }
+            }
             current = next;
+            current.setLastVisited(iteration);
 
             int agent = current.getAgent();
             int lives = state.getLives();
             int score = state.getScore();
 
-            // This is the action we performed for getting to this state.
-            Action action = current.getAction();
             if (action != null) {
                 // Apply the action so that the simulated state is affected and the simulated game progresses.
-                action.apply(agent, state);
+                if (isHashingStates()) {
+                    currentHash = ZobristHash.apply(currentHash, action, agent, state, hashObserverID);
+                } else {
+                    action.apply(agent, state);
+                }
             }
 
             // Update the values of lives lost and points gain if the action taken was from our agent.
@@ -224,6 +1059,114 @@ public class MCTS implements Agent {
         return current;
     }
 
+    /**
+     * Check if there is no action left to expand from a node in the given state.
+     *
+     * @param node  the node to check
+     * @param state the state the node is being visited in
+     * @return true if every legal action (or equivalence class of actions) already has a child
+     */
+    protected boolean isFullyExpanded(MCTSNode node, GameState state) {
+        if (!abstractActions) {
+            return node.fullyExpanded(state);
+        }
+        int nextAgentID = (node.getAgent() + 1) % state.getPlayerCount();
+        return getExpandableMoves(node, state, nextAgentID).isEmpty();
+    }
+
+    /**
+     * Check if progressive widening allows a node to get one more child.
+     *
+     * @param node the node to check
+     * @return true if the node has fewer children than allowed by its number of visits
+     */
+    protected boolean canWiden(MCTSNode node) {
+        if (!progressiveWidening) {
+            return true;
+        }
+        double allowedChildren = wideningConstant * Math.pow(node.getVisits() + 1, wideningExponent);
+        return node.getChildSize() < Math.ceil(allowedChildren);
+    }
+
+    /**
+     * Get the actions that could be used for expanding a node.
+     * <p>
+     * When actions are abstracted, only one action per equivalence class is returned, and only for
+     * the classes that no legal child covers yet.
+     *
+     * @param node    the node to expand
+     * @param state   the state the node is being visited in
+     * @param agentID the agent that moves from the node
+     * @return the legal actions that do not have a child yet
+     */
+    protected Collection<Action> getExpandableMoves(MCTSNode node, GameState state, int agentID) {
+        Collection<Action> legalActions = node.getLegalMoves(state, agentID);
+        if (!abstractActions) {
+            return legalActions;
+        }
+
+        List<Action> legalChildActions = new ArrayList<>();
+        for (MCTSNode child : node.getChildren()) {
+            if (child.getAction().isLegal(agentID, state)) {
+                legalChildActions.add(child.getAction());
+            }
+        }
+        return ActionAbstraction.getUncoveredRepresentatives(legalActions, legalChildActions, state);
+    }
+
+    /**
+     * Check if the nodes visited by each iteration need to be recorded.
+     *
+     * @return true if a mode needs the path of the iteration for its backup
+     */
+    protected boolean isTrackingPath() {
+        return useTranspositions || useRave;
+    }
+
+    /**
+     * Update the AMAF statistics of every node on the path of the current iteration.
+     * <p>
+     * Each node is credited with the actions that the player moving from it performed at any later point of the
+     * iteration, counting each action once.
+     *
+     * @param playerCount the number of players in the game
+     * @param score       the result of the iteration
+     */
+    protected void backupAmaf(int playerCount, double score) {
+        for (int i = 0; i < currentPath.size(); i++) {
+            MCTSNode node = currentPath.get(i);
+            int mover = (node.getAgent() + 1) % playerCount;
+            long creditedActions = 0;
+            for (int j = i; j < currentTrace.size(); j++) {
+                int actionId = currentTrace.getActionId(j);
+                if (currentTrace.getPlayer(j) == mover && (creditedActions & (1L << actionId)) == 0) {
+                    creditedActions |= 1L << actionId;
+                    node.updateAmaf(actionId, score);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if the hash of the simulated states needs to be maintained during the search.
+     *
+     * @return true if the nodes must know the hash of their state
+     */
+    protected boolean isHashingStates() {
+        return generateExamples || useTranspositions;
+    }
+
+    /**
+     * Combine the hash of a state with the depth it is reached at, so shared nodes always have a single depth.
+     *
+     * @param stateHash the hash of the state
+     * @param depth     the depth of the node in the tree
+     * @return the key of the node in the transposition table
+     */
+    protected static long getTranspositionKey(long stateHash, int depth) {
+        return stateHash ^ (depth * 0x9E3779B97F4A7C15L);
+    }
+
     protected int calculateTreeDepthLimit(GameState state){
         return (state.getPlayerCount() * treeDepthMul) + 1;
     }
@@ -237,11 +1180,15 @@ public class MCTS implements Agent {
      * @return the next action to be added to the tree from this state.
      */
     protected Action selectActionForExpand(GameState state, MCTSNode node, int agentID) {
-        Collection<Action> legalActions = node.getLegalMoves(state, agentID);
+        Collection<Action> legalActions = getExpandableMoves(node, state, agentID);
         if (legalActions.isEmpty()) {
             return null;
         }
 
+        if (actionPrior != null) {
+            return selectActionByPrior(new ArrayList<>(legalActions), state, agentID);
+        }
+
         Iterator<Action> actionItr = legalActions.iterator();
 
         int selected = random.nextInt(legalActions.size());
@@ -253,13 +1200,38 @@ public class MCTS implements Agent {
         return curr;
     }
 
+    /**
+     * Select the most promising action according to the prior, breaking ties at random.
+     *
+     * @param legalActions the actions that can be expanded
+     * @param state        the state the actions would be applied to
+     * @param agentID      the agent that would perform the actions
+     * @return the action with the highest prior
+     */
+    protected Action selectActionByPrior(List<Action> legalActions, GameState state, int agentID) {
+        double[] priors = actionPrior.getPriors(legalActions, agentID, state);
+        double bestPrior = -Double.MAX_VALUE;
+        Action bestAction = null;
+        for (int i = 0; i < priors.length; i++) {
+            double prior = priors[i] + random.nextDouble() * 1e-6;
+            if (prior > bestPrior) {
+                bestPrior = prior;
+                bestAction = legalActions.get(i);
+            }
+        }
+        return bestAction;
+    }
+
     protected Action selectActionForRollout(GameState state, int playerID) {
         Collection<Action> legalActions = Utils.generateActions(playerID, state);
 
-        List<Action> listAction = new ArrayList<>(legalActions);
-        Collections.shuffle(listAction);
+        // Pick a random element instead of shuffling a copy of the actions, which is all a rollout step needs.
+        List<Action> listAction = legalActions instanceof List ? (List<Action>) legalActions : new ArrayList<>(legalActions);
+        if (opponentModel != null && opponentModel.isModelled(playerID)) {
+            return opponentModel.sampleAction(listAction, playerID, state.getInfomation(), random);
+        }
 
-        return listAction.get(0);
+        return listAction.get(random.nextInt(listAction.size()));
     }
 
     protected MCTSNode expand(MCTSNode parent, GameState state) {
@@ -277,26 +1249,65 @@ public class MCTS implements Agent {
             return parent.getChild(action);
         }
 
-        // Creates a child node of the current node that is reached by the legal action obtained.
-        GameState stateCopy = state.getCopy();
-        action.apply(nextAgentID, stateCopy);
+        // Creates a child node of the current node that is reached by the legal action obtained. The state of the child
+        // is only needed for hashing it and for generating examples, and is only kept in the node for the latter.
+        GameState stateCopy = null;
+        long childHash = 0;
+        if (isHashingStates()) {
+            stateCopy = state.getCopy();
+            childHash = ZobristHash.apply(currentHash, action, nextAgentID, stateCopy, hashObserverID);
+        }
+
+        // If another ordering of moves already reached this state, share its node instead of creating a new one.
+        long transpositionKey = getTranspositionKey(childHash, parent.getDepth() + 1);
+        if (useTranspositions) {
+            MCTSNode transposition = transpositionTable.get(transpositionKey);
+            if (telemetry != null) {
+                telemetry.recordLookup(transposition != null);
+            }
+            if (transposition != null) {
+                parent.addTransposedChild(action, transposition);
+                return transposition;
+            }
+        }
+
         MCTSNode child = new MCTSNode(
                 parent,
                 nextAgentID,
                 action,
                 Utils.generateAllActions(nextAgentID + 1, state.getPlayerCount()),
-                stateCopy);
+                generateExamples ? stateCopy : null);
+        child.setStateHash(childHash);
+        nodeCount++;
+        if (telemetry != null) {
+            telemetry.nodesAllocated++;
+        }
+        if (useTranspositions) {
+            transpositionTable.put(transpositionKey, child);
+        }
 
         parent.addChild(child);
         return child;
     }
 
     protected int rollout(GameState state, MCTSNode current) {
+        if (compactRollouts) {
+            return compactRollout(state, current);
+        }
+
         int playerID = (current.getAgent() + 1) % state.getPlayerCount();
         int moves = 0;
 
         while (!state.isGameOver() && moves < rolloutDepth) {
+            if (endgameSolver != null && endgameSolver.canSolve(state)) {
+                int score = endgameSolver.solve(state, playerID);
+                current.backupRollout(moves, score);
+                return score;
+            }
             Action action = selectActionForRollout(state, playerID);
+            if (useRave) {
+                currentTrace.add(playerID, ActionIds.getActionId(action, playerID, state.getPlayerCount()));
+            }
             action.apply(playerID, state);
             playerID = (playerID + 1) % state.getPlayerCount();
             moves++;
@@ -306,6 +1317,122 @@ public class MCTS implements Agent {
         return state.getScore();
     }
 
+    /**
+     * Perform a random rollout on the compact representation of the state.
+     * <p>
+     * The given state is left untouched: it is only loaded into the reused compact state.
+     *
+     * @param state   the determinized state the rollout starts from
+     * @param current the node the rollout starts from
+     * @return the score at the end of the rollout
+     */
+    protected int compactRollout(GameState state, MCTSNode current) {
+        int playerCount = state.getPlayerCount();
+        int playerID = (current.getAgent() + 1) % playerCount;
+        int moves = 0;
+        compactState.load(state);
+
+        while (!compactState.isGameOver() && moves < rolloutDepth) {
+            if (endgameSolver != null && endgameSolver.canSolve(compactState)) {
+                int score = endgameSolver.solve(compactState, playerID);
+                current.backupRollout(moves, score);
+                return score;
+            }
+            int legalCount = compactState.getLegalActions(playerID, compactActions);
+            int actionId = opponentModel != null && opponentModel.isModelled(playerID)
+                    ? opponentModel.sampleActionId(compactActions, legalCount, playerID, compactState.getInformation(), random)
+                    : compactActions[random.nextInt(legalCount)];
+            if (useRave) {
+                currentTrace.add(playerID, actionId);
+            }
+            compactState.apply(playerID, actionId);
+            playerID = (playerID + 1) % playerCount;
+            moves++;
+        }
+
+        int score = compactState.getScore();
+        current.backupRollout(moves, score);
+        return score;
+    }
+
+    /**
+     * Perform all the rollouts of a selected node, on the worker pool if there is one.
+     * <p>
+     * The rollouts on the pool do not share anything with the search thread: they run on their own copy of the
+     * state and their statistics are recorded once they are all finished. They are plain random rollouts, as the
+     * endgame solver, the RAVE trace and the opponent model belong to the search thread; setLeafParallelism rejects
+     * those modes.
+     *
+     * @param state   the determinized state the rollouts start from
+     * @param current the node the rollouts start from
+     * @return the mean score at the end of the rollouts
+     */
+    protected double batchRollout(GameState state, MCTSNode current) {
+        int total = 0;
+        if (rolloutExecutor == null) {
+            for (int i = 0; i < leafRollouts; i++) {
+                // Compact rollouts leave the state untouched, so it only has to be copied for the library ones.
+                GameState rolloutState = compactRollouts || i == leafRollouts - 1 ? state : state.getCopy();
+                total += rollout(rolloutState, current);
+            }
+            return (double) total / leafRollouts;
+        }
+
+        int playerID = (current.getAgent() + 1) % state.getPlayerCount();
+        int[] moves = new int[leafRollouts];
+        List<Callable<Integer>> rollouts = new ArrayList<>(leafRollouts);
+        for (int i = 0; i < leafRollouts; i++) {
+            int index = i;
+            rollouts.add(() -> {
+                if (compactRollouts) {
+                    CompactState rolloutState = new CompactState();
+                    rolloutState.load(state);
+                    moves[index] = rolloutState.playRandomly(playerID, rolloutDepth, ThreadLocalRandom.current(), new int[ActionIds.NUM_ACTIONS]);
+                    return rolloutState.getScore();
+                }
+                GameState rolloutState = state.getCopy();
+                moves[index] = playRandomly(rolloutState, playerID);
+                return rolloutState.getScore();
+            });
+        }
+
+        try {
+            List<Future<Integer>> results = rolloutExecutor.invokeAll(rollouts);
+            for (int i = 0; i < leafRollouts; i++) {
+                int score = results.get(i).get();
+                current.backupRollout(moves[i], score);
+                total += score;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the rollouts", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A rollout failed", e.getCause());
+        }
+        return (double) total / leafRollouts;
+    }
+
+    /**
+     * Play uniformly random legal moves on a state until the game ends or the rollout depth is reached.
+     * <p>
+     * Unlike rollout, this does not touch any field of the agent, so it can run on any thread.
+     *
+     * @param state    the state to play on, which is modified
+     * @param playerID the player moving first
+     * @return the number of moves played
+     */
+    protected int playRandomly(GameState state, int playerID) {
+        Random random = ThreadLocalRandom.current();
+        int moves = 0;
+        while (!state.isGameOver() && moves < rolloutDepth) {
+            List<Action> legalActions = new ArrayList<>(Utils.generateActions(playerID, state));
+            legalActions.get(random.nextInt(legalActions.size())).apply(playerID, state);
+            playerID = (playerID + 1) % state.getPlayerCount();
+            moves++;
+        }
+        return moves;
+    }
+
     @Override
     public String toString() {
         return "MCTS";
@@ -316,6 +1443,24 @@ public class MCTS implements Agent {
     }
 
     public void generateExamples(MCTSNode node, int thisAgentId) throws IOException {
+        generateExamples(node, thisAgentId, new HashSet<>());
+    }
+
+    /**
+     * Write the training examples of a subtree, skipping states that were already written.
+     * <p>
+     * Different orderings of moves lead to the same state, which would otherwise be written once for every
+     * ordering that was explored.
+     *
+     * @param node          the root of the subtree
+     * @param thisAgentId   the agent the examples are written for
+     * @param writtenHashes the hashes of the states written so far
+     * @throws IOException the examples could not be written
+     */
+    protected void generateExamples(MCTSNode node, int thisAgentId, Set<Long> writtenHashes) throws IOException {
+        if (!writtenHashes.add(node.getStateHash()))
+            return;
+
         int totalVisits = node.getChildren().stream().map(c -> c.getVisits()).reduce(0, Integer::sum);
 
         if (totalVisits == 0)
@@ -338,7 +1483,7 @@ public class MCTS implements Agent {
 
         for (MCTSNode child : node.getChildren()) {
             Action actionToGetToChild = child.getAction();
-            int actionIdToGetToChild = getActionId(actionToGetToChild, thisAgentId, playerCount);
+            int actionIdToGetToChild = ActionIds.getActionId(actionToGetToChild, thisAgentId, playerCount);
             policy[actionIdToGetToChild] = (double)child.getVisits() / (double)totalVisits;
         }
 
@@ -346,37 +1491,8 @@ public class MCTS implements Agent {
 
         for (MCTSNode child : node.getChildren()) {
             if (child.getVisits() != 0)
-                generateExamples(child, thisAgentId);
-        }
-    }
-
-    public int getActionId(Action action, int thisAgentId, int playerCount) {
-        if (action instanceof DiscardCard)
-            return ((DiscardCard) action).slot;
-        if (action instanceof PlayCard)
-            return 5 + ((PlayCard) action).slot;
-
-        int actionId = 0;
-        int playerToldId = 10;
-        if (action instanceof TellColour) {
-            actionId = 10 + ((TellColour) action).colour.ordinal();
-            playerToldId = ((TellColour) action).player;
-        }
-        else if (action instanceof TellValue) {
-            actionId = 15 + ((TellValue) action).value - 1;
-            playerToldId = ((TellValue) action).player;
+                generateExamples(child, thisAgentId, writtenHashes);
         }
-
-        int playerOffset = getPlayerOffset(thisAgentId, playerToldId, playerCount);
-        actionId = actionId + 10 * playerOffset;
-        return actionId;
-    }
-
-    public int getPlayerOffset(int thisAgentId, int playerId, int playerCount) {
-        if (thisAgentId <= playerId)
-            return playerId - thisAgentId;
-        else
-            return playerCount - thisAgentId + playerId;
     }
 
     public String getCardsColumnNames(String prefix) {
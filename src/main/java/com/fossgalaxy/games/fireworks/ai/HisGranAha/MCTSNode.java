@@ -7,12 +7,17 @@ import com.fossgalaxy.stats.StatsSummary;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -21,6 +26,8 @@ import java.util.stream.Collectors;
 public class MCTSNode {
 
     public static final double DEFAULT_EXP_CONST = Math.sqrt(2);
+    // Number of visits at which the child statistics and the AMAF statistics are weighted equally.
+    public static final double RAVE_EQUIVALENCE = 250;
 
     private static final int MAX_SCORE = 25;
     private static final double EPSILON = 1e-6;
@@ -29,11 +36,11 @@ public class MCTSNode {
     private final double expConst;
     private final Action moveToState;
     private final int agentId;
-    private final MCTSNode parent;
+    private MCTSNode parent;
     private final List<MCTSNode> children;
     private final Collection<Action> allUnexpandedActions;
     private final Random random;
-    private final int depth;
+    private int depth;
     private final Logger logger = LoggerFactory.getLogger(MCTSNode.class);
 
     private double score;
@@ -42,10 +49,27 @@ public class MCTSNode {
 
     protected Map<Action, Integer> legalChildVisits;
 
+    // Only used when the tree is a DAG: the action leading to each child reached through a transposition, the
+    // actions leading to a child another action already leads to, and how many times each child was reached from
+    // this node.
+    private Map<MCTSNode, Action> transposedChildActions;
+    private List<Action> mergedActions;
+    private Map<MCTSNode, Integer> edgeVisits;
+    // Number of nodes having this node as a child; it only leaves the tree once none of them does.
+    private int linkCount;
+
+    // All-moves-as-first statistics of the actions of the player moving from this node, by action Id (only
+    // allocated when RAVE is used).
+    private double[] amafScores;
+    private int[] amafVisits;
+
     protected final StatsSummary rolloutScores;
     protected final StatsSummary rolloutMoves;
 
     private GameState state;
+    private long stateHash;
+    // The iteration in which the search last went through this node.
+    private int lastVisited;
 
     public MCTSNode(Collection<Action> allUnexpandedActions) {
         this(null, -1, null, DEFAULT_EXP_CONST, allUnexpandedActions);
@@ -95,6 +119,145 @@ public class MCTSNode {
     public void addChild(MCTSNode node) {
         allUnexpandedActions.remove(node.getAction());
         children.add(node);
+        node.linkCount++;
+    }
+
+    /**
+     * Link a node that was created from another parent as a child of this node.
+     *
+     * @param action the action leading from this node to the child
+     * @param node   the existing node for the state the action leads to
+     */
+    public void addTransposedChild(Action action, MCTSNode node) {
+        if (transposedChildActions == null) {
+            transposedChildActions = new HashMap<>();
+        }
+        allUnexpandedActions.remove(action);
+        // Two actions from this node can lead to the same state (e.g. tells that teach nothing new), in which case
+        // the child is only linked once and keeps its first action; the other one is remembered for collapse.
+        if (children.contains(node)) {
+            if (mergedActions == null) {
+                mergedActions = new ArrayList<>();
+            }
+            mergedActions.add(action);
+            return;
+        }
+        transposedChildActions.put(node, action);
+        children.add(node);
+        node.linkCount++;
+    }
+
+    /**
+     * Get the action leading from this node to one of its children.
+     * <p>
+     * A child reached through a transposition keeps the action of the parent that created it, so the action of
+     * the edge may be different from the one stored in the child.
+     *
+     * @param child the child
+     * @return the action leading to the child from this node
+     */
+    public Action getEdgeAction(MCTSNode child) {
+        if (transposedChildActions != null) {
+            Action action = transposedChildActions.get(child);
+            if (action != null) {
+                return action;
+            }
+        }
+        return child.moveToState;
+    }
+
+    /**
+     * Back up the result of an iteration along the path that was followed, rather than along the parents.
+     * <p>
+     * In a DAG a node has several parents, so only the ones on the path of the iteration are updated.
+     *
+     * @param path  the nodes from the root to the node the rollout started from
+     * @param score the result of the iteration
+     */
+    public static void backupPath(List<MCTSNode> path, double score) {
+        backupPath(path, score, 1);
+    }
+
+    /**
+     * Back up the mean result of several rollouts along the path that was followed, counting as that many visits.
+     *
+     * @param path  the nodes from the root to the node the rollouts started from
+     * @param score the mean result of the rollouts
+     * @param count the number of rollouts
+     */
+    public static void backupPath(List<MCTSNode> path, double score, int count) {
+        for (int i = 0; i < path.size(); i++) {
+            MCTSNode node = path.get(i);
+            node.score += score * count;
+            node.visits += count;
+            if (i > 0) {
+                MCTSNode parent = path.get(i - 1);
+                parent.incrementEdgeVisits(node, count);
+                if (count > 1) {
+                    parent.legalChildVisits.merge(parent.getEdgeAction(node), count - 1, Integer::sum);
+                }
+            }
+        }
+    }
+
+    private void incrementEdgeVisits(MCTSNode child, int count) {
+        if (edgeVisits == null) {
+            edgeVisits = new HashMap<>();
+        }
+        edgeVisits.merge(child, count, Integer::sum);
+    }
+
+    /**
+     * Calculate the UCT value of a child from this node.
+     * <p>
+     * The exploitation term uses the statistics of the child, blended with the AMAF statistics of its action when
+     * there are any. When children can be shared with other parents, the exploitation term uses the statistics
+     * gathered over every path that reached the child, while the exploration term uses how often the child was
+     * chosen from this node.
+     *
+     * @param child          the child to evaluate
+     * @param edgeAction     the action leading to the child from this node
+     * @param playerCount    the number of players in the game
+     * @param transpositions whether the children can be shared with other parents
+     * @return the UCT value of the child from this node
+     */
+    protected double getChildUCTValue(MCTSNode child, Action edgeAction, int playerCount, boolean transpositions) {
+        int edgeVisitCount = child.visits;
+        if (transpositions) {
+            edgeVisitCount = edgeVisits == null ? 0 : edgeVisits.getOrDefault(child, 0);
+            if (edgeVisitCount == 0 || child.visits == 0) {
+                return Double.MAX_VALUE;
+            }
+        }
+
+        double mean = (child.score / MAX_SCORE) / child.visits;
+        if (amafVisits != null) {
+            int actionId = ActionIds.getActionId(edgeAction, child.agentId, playerCount);
+            if (amafVisits[actionId] > 0) {
+                double beta = Math.sqrt(RAVE_EQUIVALENCE / (3 * child.visits + RAVE_EQUIVALENCE));
+                double amafMean = (amafScores[actionId] / MAX_SCORE) / amafVisits[actionId];
+                mean = (1 - beta) * mean + beta * amafMean;
+            }
+        }
+
+        int legalVisits = MCTS.OLD_UCT_BEHAVIOUR ? child.parentWasVisitedAndIWasLegalOld : legalChildVisits.get(edgeAction);
+        return mean + (expConst * Math.sqrt(Math.log(legalVisits) / edgeVisitCount));
+    }
+
+    /**
+     * Credit an action of the player moving from this node with the result of an iteration in which it was played
+     * (anywhere later in the tree or in the rollout).
+     *
+     * @param actionId the Id of the action, relative to the player moving from this node
+     * @param score    the result of the iteration
+     */
+    public void updateAmaf(int actionId, double score) {
+        if (amafVisits == null) {
+            amafScores = new double[ActionIds.NUM_ACTIONS];
+            amafVisits = new int[ActionIds.NUM_ACTIONS];
+        }
+        amafScores[actionId] += score;
+        amafVisits[actionId]++;
     }
 
     public double getUCTValue() {
@@ -106,19 +269,117 @@ public class MCTSNode {
         return ((score / MAX_SCORE) / visits) + (expConst * Math.sqrt(Math.log(legalVisits) / visits));
     }
 
+    /**
+     * Make this node the root of a new search, reusing the statistics of its subtree. The node is detached from
+     * its parent and the depth of every node below it is rebased so that this node is at depth 0.
+     *
+     * @return every node of the subtree, this one included
+     */
+    public List<MCTSNode> detach() {
+        int offset = depth;
+        parent = null;
+
+        Set<MCTSNode> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<MCTSNode> toVisit = new ArrayDeque<>();
+        List<MCTSNode> nodes = new ArrayList<>();
+        toVisit.push(this);
+        while (!toVisit.isEmpty()) {
+            MCTSNode node = toVisit.pop();
+            if (!seen.add(node)) {
+                continue;
+            }
+            node.depth -= offset;
+            node.linkCount = 0;
+            nodes.add(node);
+            for (MCTSNode child : node.children) {
+                toVisit.push(child);
+            }
+        }
+
+        // Links from the parents left out of the subtree are gone.
+        for (MCTSNode node : nodes) {
+            for (MCTSNode child : node.children) {
+                child.linkCount++;
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Remove the subtree below this node to free memory.
+     * <p>
+     * The statistics of this node already include every visit of the removed nodes, so nothing is lost about this
+     * node itself; the actions of its children become unexpanded again and can be expanded afresh later. In a DAG,
+     * a node below this one that is still a child of a node outside the subtree is only unlinked, and stays in the
+     * tree with its own subtree. Each node is removed at most once.
+     *
+     * @return the removed nodes
+     */
+    public List<MCTSNode> collapse() {
+        for (MCTSNode child : children) {
+            allUnexpandedActions.add(getEdgeAction(child));
+        }
+        if (mergedActions != null) {
+            allUnexpandedActions.addAll(mergedActions);
+        }
+
+        List<MCTSNode> removed = new ArrayList<>();
+        Deque<MCTSNode> toVisit = new ArrayDeque<>();
+        unlinkChildren(toVisit);
+        while (!toVisit.isEmpty()) {
+            MCTSNode node = toVisit.pop();
+            removed.add(node);
+            node.unlinkChildren(toVisit);
+        }
+        return removed;
+    }
+
+    /**
+     * Remove every child of this node, keeping the ones left without any parent.
+     *
+     * @param orphans receives the children that are no longer linked from any node
+     */
+    private void unlinkChildren(Deque<MCTSNode> orphans) {
+        for (MCTSNode child : children) {
+            child.linkCount--;
+            if (child.linkCount == 0) {
+                orphans.push(child);
+            }
+        }
+        children.clear();
+        transposedChildActions = null;
+        mergedActions = null;
+        edgeVisits = null;
+    }
+
     public List<MCTSNode> getChildren() {
         return children;
     }
 
     public void backup(double score) {
+        backup(score, 1);
+    }
+
+    /**
+     * Back up the mean result of several rollouts started from this node, counting as that many visits.
+     * <p>
+     * The node was selected only once, so the visits of the parents with this child being legal are raised to match.
+     *
+     * @param score the mean result of the rollouts
+     * @param count the number of rollouts
+     */
+    public void backup(double score, int count) {
         MCTSNode current = this;
         while (current != null) {
             if (DISCOUNT_ENABLED) {
-                current.score += score * Math.pow(0.95, current.getDepth()-1.0);
+                current.score += score * count * Math.pow(0.95, current.getDepth()-1.0);
             } else {
-                current.score += score;
+                current.score += score * count;
+            }
+            current.visits += count;
+            if (count > 1 && current.parent != null) {
+                current.parent.legalChildVisits.merge(current.moveToState, count - 1, Integer::sum);
             }
-            current.visits++;
             current = current.parent;
         }
     }
@@ -128,12 +389,23 @@ public class MCTSNode {
     }
 
     public MCTSNode getUCTNode(GameState state) {
+        return getUCTNode(state, false);
+    }
+
+    /**
+     * Select the child with the highest UCT value among the ones whose action is legal in the given state.
+     *
+     * @param state         the state this node is being visited in
+     * @param transpositions whether the children can be shared with other parents
+     * @return the selected child, or null if no child is legal
+     */
+    public MCTSNode getUCTNode(GameState state, boolean transpositions) {
         double bestScore = -Double.MAX_VALUE;
         MCTSNode bestChild = null;
 
         for (MCTSNode child : children) {
             //XXX Hack to check if the move is legal in this version
-            Action moveToMake = child.moveToState;
+            Action moveToMake = getEdgeAction(child);
             if (!moveToMake.isLegal(child.agentId, state)) {
                 continue;
             }
@@ -141,7 +413,8 @@ public class MCTSNode {
             child.parentWasVisitedAndIWasLegalOld++;
             updateVisitCount(moveToMake);
 
-            double childScore = child.getUCTValue() + (random.nextDouble() * EPSILON);
+            double uctValue = getChildUCTValue(child, moveToMake, state.getPlayerCount(), transpositions);
+            double childScore = uctValue + (random.nextDouble() * EPSILON);
 
             if (childScore > bestScore) {
                 bestScore = childScore;
@@ -206,7 +479,7 @@ public class MCTSNode {
 
     public boolean containsChild(Action moveToChild) {
         for (MCTSNode child : children) {
-            if (child.moveToState.equals(moveToChild)) {
+            if (getEdgeAction(child).equals(moveToChild)) {
                 return true;
             }
         }
@@ -215,7 +488,7 @@ public class MCTSNode {
 
     public MCTSNode getChild(Action action) {
         for (MCTSNode child : children) {
-            if (child.moveToState.equals(action)) {
+            if (getEdgeAction(child).equals(action)) {
                 return child;
             }
         }
@@ -245,7 +518,7 @@ public class MCTSNode {
 
     public Collection<Action> getAllActionsExpandedAlready() {
         ArrayList<Action> actions = new ArrayList<>();
-        children.forEach(node -> actions.add(node.getAction()));
+        children.forEach(node -> actions.add(getEdgeAction(node)));
         return actions;
     }
 
@@ -295,6 +568,26 @@ public class MCTSNode {
         return this.visits;
     }
 
+    public double getScore() {
+        return this.score;
+    }
+
+    /**
+     * Start this child with the statistics of an earlier search, as if it had already been visited.
+     *
+     * @param visits    the number of visits to add
+     * @param meanScore the mean score of those visits
+     */
+    public void seedStatistics(int visits, double meanScore) {
+        this.score += meanScore * visits;
+        this.visits += visits;
+        if (parent != null) {
+            parent.score += meanScore * visits;
+            parent.visits += visits;
+            parent.legalChildVisits.merge(moveToState, visits, Integer::sum);
+        }
+    }
+
     public GameState getGameState() {
         return this.state;
     }
@@ -302,4 +595,20 @@ public class MCTSNode {
     public void setGameState(GameState state) {
         this.state = state;
     }
+
+    public long getStateHash() {
+        return this.stateHash;
+    }
+
+    public void setStateHash(long stateHash) {
+        this.stateHash = stateHash;
+    }
+
+    public int getLastVisited() {
+        return this.lastVisited;
+    }
+
+    public void setLastVisited(int lastVisited) {
+        this.lastVisited = lastVisited;
+    }
 }
@@ -0,0 +1,46 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+/**
+ * Holds the neural network model that is currently used by the agents, so that a newly trained
+ * model can be promoted atomically while the agents keep playing.
+ */
+public class ModelRegistry {
+    // Attributes of the class.
+    private NeuralNetwork current;
+    private long version;
+
+    /**
+     * Constructs a registry whose initial model is the given one.
+     * @param initialModel The model used until a new one is promoted.
+     */
+    public ModelRegistry(NeuralNetwork initialModel) {
+        this.current = initialModel;
+        this.version = 0;
+    }
+
+    /**
+     * Replaces the current model by a new one.
+     * @param model The model that has to be used from now on. It must not be modified afterwards.
+     */
+    public synchronized void promote(NeuralNetwork model) {
+        this.current = model;
+        this.version++;
+    }
+
+    /**
+     * Creates an independent copy of the current model, which can be used by a single agent without
+     * being affected by later promotions.
+     * @return The copy of the current model.
+     */
+    public synchronized NeuralNetwork copyCurrent() {
+        return current.copy();
+    }
+
+    /**
+     * Returns the version of the current model, which is incremented on every promotion.
+     * @return The version of the current model.
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+}
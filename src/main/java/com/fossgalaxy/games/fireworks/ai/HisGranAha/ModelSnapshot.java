@@ -0,0 +1,243 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot of per-player tables (such as ActionHistogram or OpponentModel counts) in a binary
+ * file, so that what is learned about the other players survives the end of the process.
+ *
+ * The file holds a header (magic, version, length of the tables, length and CRC32 of the payload)
+ * followed by the payload: the number of players, then for each player its name in UTF-8 and its
+ * table. It is written to a temporary file which is then moved over the previous snapshot, and it
+ * is memory-mapped when read back. A snapshot whose payload does not match its header (a write
+ * that did not finish, a corrupted file) or whose tables have another length is ignored.
+ *
+ * There is a single snapshot per path, obtained with open, which owns the tables: every agent using
+ * the path counts into the same tables, so what they learn is merged rather than overwritten by
+ * whichever agent saves last. The tables are saved every few games (counted over all those agents)
+ * and once when the JVM shuts down, with a single shutdown hook per path. The tables can be saved
+ * while agents keep counting on other threads; a save then holds some of the latest counts.
+ */
+public class ModelSnapshot {
+    public static final int DEFAULT_SAVE_INTERVAL = 50;
+
+    private static final int MAGIC = 0x48424D53;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final Map<Path, ModelSnapshot> SNAPSHOTS = new HashMap<>();
+
+    private final Path path;
+    private final Map<String, int[]> tables = new ConcurrentHashMap<>();
+    private final int tableLength;
+    private final int saveInterval;
+    private final AtomicInteger gamesSinceSave = new AtomicInteger();
+
+    private ModelSnapshot(Path path, int tableLength, int saveInterval) {
+        this.path = path;
+        this.tableLength = tableLength;
+        this.saveInterval = saveInterval;
+    }
+
+    /**
+     * Get the snapshot of a path, loading it and registering its shutdown hook the first time the path is opened.
+     *
+     * @param path         the path of the snapshot
+     * @param tableLength  the length of every table
+     * @param saveInterval the number of games between two saves, or 0 to only save on shutdown
+     * @return the snapshot shared by every agent using the path
+     * @throws IllegalArgumentException if the path is already open with tables of another length
+     */
+    public static ModelSnapshot open(String path, int tableLength, int saveInterval) {
+        Path key = Paths.get(path).toAbsolutePath().normalize();
+        synchronized (SNAPSHOTS) {
+            ModelSnapshot snapshot = SNAPSHOTS.get(key);
+            if (snapshot == null) {
+                snapshot = new ModelSnapshot(key, tableLength, saveInterval);
+                snapshot.load();
+                Runtime.getRuntime().addShutdownHook(new Thread(snapshot::save, "model-snapshot"));
+                SNAPSHOTS.put(key, snapshot);
+            } else if (snapshot.tableLength != tableLength) {
+                throw new IllegalArgumentException("The model snapshot " + path + " holds tables of length "
+                        + snapshot.tableLength + ", not " + tableLength);
+            }
+            return snapshot;
+        }
+    }
+
+    /**
+     * Get the tables of the snapshot, to count into.
+     *
+     * @return the tables by player name, which can be updated from several threads
+     */
+    public Map<String, int[]> getTables() {
+        return tables;
+    }
+
+    /**
+     * Load the tables of the snapshot, replacing the tables of the same players.
+     *
+     * @return true if the snapshot was valid and loaded
+     */
+    private boolean load() {
+        if (!Files.exists(path)) {
+            return false;
+        }
+
+        Map<String, int[]> loaded = read(path, tableLength);
+        if (loaded == null) {
+            return false;
+        }
+        tables.putAll(loaded);
+        return true;
+    }
+
+    /**
+     * Save the snapshot, reporting any error.
+     *
+     * @return true if the snapshot was written
+     */
+    public synchronized boolean save() {
+        try {
+            write(path, tables, tableLength);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not save the model snapshot: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Count a game started by one of the agents using the snapshot, saving the snapshot when the interval is reached.
+     */
+    public void onGameStarted() {
+        if (saveInterval > 0 && gamesSinceSave.incrementAndGet() >= saveInterval) {
+            gamesSinceSave.set(0);
+            save();
+        }
+    }
+
+    /**
+     * Read a snapshot.
+     *
+     * @param path        the path of the snapshot
+     * @param tableLength the expected length of the tables
+     * @return the tables by player name, or null if the snapshot is not valid
+     */
+    public static Map<String, int[]> read(Path path, int tableLength) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION
+                    || buffer.getInt(8) != tableLength) {
+                System.err.println("Ignoring incompatible model snapshot: " + path);
+                return null;
+            }
+            int payloadLength = buffer.getInt(12);
+            long checksum = buffer.getLong(16);
+            if (buffer.capacity() != HEADER_SIZE + (long) payloadLength || checksum(buffer, payloadLength) != checksum) {
+                System.err.println("Ignoring incomplete model snapshot: " + path);
+                return null;
+            }
+
+            buffer.position(HEADER_SIZE);
+            int count = buffer.getInt();
+            Map<String, int[]> tables = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                byte[] name = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(name);
+                int[] table = new int[tableLength];
+                buffer.asIntBuffer().get(table);
+                buffer.position(buffer.position() + tableLength * 4);
+                tables.put(new String(name, StandardCharsets.UTF_8), table);
+            }
+            return tables;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not load the model snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write a snapshot, replacing the previous one only once it is complete.
+     *
+     * @param path        the path of the snapshot
+     * @param tables      the tables by player name
+     * @param tableLength the length of every table
+     * @throws IOException if the snapshot could not be written
+     */
+    public static void write(Path path, Map<String, int[]> tables, int tableLength) throws IOException {
+        List<byte[]> names = new ArrayList<>(tables.size());
+        List<int[]> counts = new ArrayList<>(tables.size());
+        int payloadLength = 4;
+        for (Map.Entry<String, int[]> entry : tables.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            if (name.length > 0xFFFF || entry.getValue().length != tableLength) {
+                continue;
+            }
+            names.add(name);
+            counts.add(entry.getValue());
+            payloadLength += 2 + name.length + tableLength * 4;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payloadLength);
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(tableLength).putInt(payloadLength).putLong(0);
+        buffer.putInt(names.size());
+        for (int i = 0; i < names.size(); i++) {
+            buffer.putShort((short) names.get(i).length);
+            buffer.put(names.get(i));
+            for (int count : counts.get(i)) {
+                buffer.putInt(count);
+            }
+        }
+        buffer.putLong(16, checksum(buffer, payloadLength));
+        buffer.flip();
+
+        Path directory = path.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            try {
+                Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static long checksum(ByteBuffer buffer, int payloadLength) {
+        ByteBuffer payload = buffer.duplicate();
+        payload.position(HEADER_SIZE);
+        payload.limit(HEADER_SIZE + payloadLength);
+        CRC32 crc = new CRC32();
+        byte[] chunk = new byte[8192];
+        while (payload.hasRemaining()) {
+            int length = Math.min(chunk.length, payload.remaining());
+            payload.get(chunk, 0, length);
+            crc.update(chunk, 0, length);
+        }
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,30 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.actions.Action;
+
+import java.util.List;
+
+/**
+ * Prior taken from the policy output of the neural network. The state is presented to the network
+ * from the point of view of the agent about to move, as it is for the root of a search.
+ */
+public class NetworkActionPrior implements ActionPrior {
+    private final NeuralNetwork nn;
+
+    public NetworkActionPrior(NeuralNetwork nn) {
+        this.nn = nn;
+    }
+
+    @Override
+    public double[] getPriors(List<Action> actions, int agentID, GameState state) {
+        int playerCount = state.getPlayerCount();
+        double[] policy = nn.predict(new NNState(state, 0)).policy;
+
+        double[] priors = new double[actions.size()];
+        for (int i = 0; i < priors.length; i++) {
+            priors[i] = policy[ActionIds.getActionId(actions.get(i), agentID, playerCount)];
+        }
+        return priors;
+    }
+}
@@ -15,6 +15,7 @@ import org.deeplearning4j.nn.modelimport.keras.exceptions.UnsupportedKerasConfig
 import org.deeplearning4j.optimize.listeners.ScoreIterationListener;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
 import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.learning.config.Adam;
@@ -43,6 +44,7 @@ public class NeuralNetwork {
 
     private ComputationGraph model;
     private MultiDataSetIterator modelIterator;
+    private MultiDataSetIterator validationIterator;
 
     /**
      * Makes a prediction based on an appropriate representation of a state of the game.
@@ -71,6 +73,17 @@ public class NeuralNetwork {
         return new NeuralNetworkOutput(policy, value);
     }
 
+    /**
+     * Creates an independent copy of this neural network, whose parameters can be modified (or which
+     * can be used from another thread) without affecting this one.
+     * @return The copy of this neural network.
+     */
+    public NeuralNetwork copy() {
+        NeuralNetwork copy = new NeuralNetwork();
+        copy.model = this.model.clone();
+        return copy;
+    }
+
     /**
      * Creates the internal neural network model using DL4J API calls.
      */
@@ -136,15 +149,45 @@ public class NeuralNetwork {
      */
     public void setTrainData(String trainDataSetPath, int numLinesSkip, int batchSize)
             throws InterruptedException, IOException {
+        this.modelIterator = createIterator(trainDataSetPath, numLinesSkip, batchSize);
+    }
+
+    /**
+     * Sets the held-out data that will be used for evaluating the internal neural network while
+     * it is being trained.
+     * @param validationDataSetPath The path to the location of the validation data file.
+     * @param numLinesSkip Number of lines in the validation data file that must be skipped before
+     *                     reaching the actual data.
+     * @param batchSize The number of validation examples that will be evaluated at once.
+     * @throws InterruptedException An operation was inadvertently interrupted.
+     * @throws IOException The path to the validation data file was not found or could not be opened.
+     */
+    public void setValidationData(String validationDataSetPath, int numLinesSkip, int batchSize)
+            throws InterruptedException, IOException {
+        this.validationIterator = createIterator(validationDataSetPath, numLinesSkip, batchSize);
+    }
+
+    /**
+     * Creates an iterator over a data file with the layout written by MCTS.generateExamples.
+     * @param dataSetPath The path to the location of the data file.
+     * @param numLinesSkip Number of lines in the data file that must be skipped before reaching
+     *                     the actual data.
+     * @param batchSize The number of examples returned in each batch.
+     * @return The iterator over the examples of the data file.
+     * @throws InterruptedException An operation was inadvertently interrupted.
+     * @throws IOException The path to the data file was not found or could not be opened.
+     */
+    private MultiDataSetIterator createIterator(String dataSetPath, int numLinesSkip, int batchSize)
+            throws InterruptedException, IOException {
         String delimiter = ",";
-        RecordReader trainReader = new CSVRecordReader(numLinesSkip, delimiter);
-        trainReader.initialize(new FileSplit(new File(trainDataSetPath)));
-
-        this.modelIterator = new RecordReaderMultiDataSetIterator.Builder(batchSize)
-                .addReader("trainReader", trainReader)
-                .addInput("trainReader", 0, 17)
-                .addOutput("trainReader", 19, 78)
-                .addOutput("trainReader", 18, 18)
+        RecordReader reader = new CSVRecordReader(numLinesSkip, delimiter);
+        reader.initialize(new FileSplit(new File(dataSetPath)));
+
+        return new RecordReaderMultiDataSetIterator.Builder(batchSize)
+                .addReader("reader", reader)
+                .addInput("reader", 0, 17)
+                .addOutput("reader", 19, 78)
+                .addOutput("reader", 18, 18)
                 .build();
     }
 
@@ -155,4 +198,48 @@ public class NeuralNetwork {
     public void train(int numEpochs) {
         this.model.fit(modelIterator, numEpochs);
     }
+
+    /**
+     * Calculates the average loss of the internal model over the held-out data.
+     * @return The loss averaged over all validation examples, or NaN if no validation data was set.
+     */
+    public double evaluate() {
+        if (validationIterator == null)
+            return Double.NaN;
+
+        double totalLoss = 0;
+        long totalExamples = 0;
+        validationIterator.reset();
+        while (validationIterator.hasNext()) {
+            MultiDataSet batch = validationIterator.next();
+            long batchSize = batch.getFeatures(0).size(0);
+            totalLoss += model.score(batch) * batchSize;
+            totalExamples += batchSize;
+        }
+        return totalExamples == 0 ? Double.NaN : totalLoss / totalExamples;
+    }
+
+    /**
+     * Performs a single update of the internal model on a batch of in-memory examples.
+     * @param features The normalized flattened representation of the state of each example.
+     * @param policies The target policy (over the 60 action Ids) of each example.
+     * @param values The target normalized value (between 0 and 1) of each example.
+     */
+    public void fit(double[][] features, double[][] policies, double[] values) {
+        double[][] valuesColumn = new double[values.length][1];
+        for (int i = 0; i < values.length; i++) {
+            valuesColumn[i][0] = values[i];
+        }
+        INDArray[] inputs = { Nd4j.create(features) };
+        INDArray[] labels = { Nd4j.create(policies), Nd4j.create(valuesColumn) };
+        this.model.fit(new org.nd4j.linalg.dataset.MultiDataSet(inputs, labels));
+    }
+
+    ComputationGraph getModel() {
+        return model;
+    }
+
+    MultiDataSetIterator getTrainIterator() {
+        return modelIterator;
+    }
 }
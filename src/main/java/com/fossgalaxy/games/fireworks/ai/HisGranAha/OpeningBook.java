@@ -0,0 +1,224 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.GameState;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+
+/**
+ * Book of precomputed root statistics for early positions, stored in a memory-mapped file.
+ *
+ * Positions are keyed by ZobristHash.hashInformationState, an abstraction of what the agent to
+ * move knows that leaves out the exact cards of the other players, so that an agent finds them
+ * whatever the deal, its cards and its seat. For each position, the book keeps the visits and the
+ * mean final score of every action Id (relative to the agent to move) found by deep offline
+ * searches, merged over every deal that reached it; see OpeningBookBuilder.
+ *
+ * The file is an open-addressing hash table: a header (magic, version, capacity, number of entries)
+ * followed by the slots, each holding a key (0 for an empty slot), 60 visit counts and 60 values.
+ */
+public class OpeningBook {
+    public static final String DEFAULT_PATH = "opening_book.bin";
+    public static final double DEFAULT_DOMINANCE = 0.8;
+    public static final int DEFAULT_MIN_VISITS = 1000;
+
+    private static final int MAGIC = 0x48424F4B;
+    // Books keyed by an earlier hash cannot be looked up and are rejected, so they must be built again.
+    private static final int VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    private static final int ENTRY_SIZE = 8 + ActionIds.NUM_ACTIONS * 4 * 2;
+    private static final long EMPTY_KEY = 0;
+
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private final int size;
+
+    private OpeningBook(MappedByteBuffer buffer, int capacity, int size) {
+        this.buffer = buffer;
+        this.capacity = capacity;
+        this.size = size;
+    }
+
+    /**
+     * Statistics of the actions at a position of the book.
+     */
+    public static class Entry {
+        public final int[] visits;
+        public final double[] values;
+
+        public Entry() {
+            this(new int[ActionIds.NUM_ACTIONS], new double[ActionIds.NUM_ACTIONS]);
+        }
+
+        public Entry(int[] visits, double[] values) {
+            this.visits = visits;
+            this.values = values;
+        }
+
+        public int getTotalVisits() {
+            int total = 0;
+            for (int actionVisits : visits) {
+                total += actionVisits;
+            }
+            return total;
+        }
+
+        /**
+         * @return the Id of the most visited action
+         */
+        public int getBestActionId() {
+            int best = 0;
+            for (int actionId = 1; actionId < visits.length; actionId++) {
+                if (visits[actionId] > visits[best]) {
+                    best = actionId;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Check if the search was sure enough of its best action to play it without searching again.
+         *
+         * @param dominance the minimum share of the visits the best action must have
+         * @param minVisits the minimum number of visits the position must have
+         * @return true if the best action can be played directly
+         */
+        public boolean isDominant(double dominance, int minVisits) {
+            int total = getTotalVisits();
+            return total >= minVisits && visits[getBestActionId()] >= dominance * total;
+        }
+
+        /**
+         * Add the statistics of another search of the same position to this entry.
+         *
+         * @param other the entry to merge into this one
+         */
+        public void merge(Entry other) {
+            for (int actionId = 0; actionId < visits.length; actionId++) {
+                int totalVisits = visits[actionId] + other.visits[actionId];
+                if (totalVisits > 0) {
+                    values[actionId] = (values[actionId] * visits[actionId] + other.values[actionId] * other.visits[actionId]) / totalVisits;
+                }
+                visits[actionId] = totalVisits;
+            }
+        }
+    }
+
+    /**
+     * Map a book file into memory.
+     *
+     * @param path the path of the book
+     * @return the book, or null if it could not be read
+     */
+    public static OpeningBook load(String path) {
+        try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+            if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                System.err.println("Not a valid opening book: " + path);
+                return null;
+            }
+            int capacity = buffer.getInt(8);
+            int size = buffer.getInt(12);
+            if (Integer.bitCount(capacity) != 1 || buffer.capacity() != HEADER_SIZE + (long) capacity * ENTRY_SIZE) {
+                System.err.println("Truncated opening book: " + path);
+                return null;
+            }
+            return new OpeningBook(buffer, capacity, size);
+        } catch (IOException e) {
+            System.err.println("Could not load the opening book: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write a book file from the statistics of a set of positions.
+     *
+     * @param path    the path of the book
+     * @param entries the statistics of each position, by information state hash
+     * @throws IOException if the file could not be written
+     */
+    public static void write(String path, Map<Long, Entry> entries) throws IOException {
+        int capacity = Integer.highestOneBit(Math.max(1, entries.size() * 2 - 1)) << 1;
+        long length = HEADER_SIZE + (long) capacity * ENTRY_SIZE;
+
+        try (RandomAccessFile file = new RandomAccessFile(path, "rw")) {
+            file.setLength(0);
+            file.setLength(length);
+            MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, length);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, capacity);
+            buffer.putInt(12, entries.size());
+
+            for (Map.Entry<Long, Entry> entry : entries.entrySet()) {
+                long key = toStoredKey(entry.getKey());
+                int slot = getFirstSlot(key, capacity);
+                while (buffer.getLong(getOffset(slot)) != EMPTY_KEY) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+
+                int offset = getOffset(slot);
+                buffer.putLong(offset, key);
+                for (int actionId = 0; actionId < ActionIds.NUM_ACTIONS; actionId++) {
+                    buffer.putInt(offset + 8 + actionId * 4, entry.getValue().visits[actionId]);
+                    buffer.putFloat(offset + 8 + (ActionIds.NUM_ACTIONS + actionId) * 4, (float) entry.getValue().values[actionId]);
+                }
+            }
+            buffer.force();
+        }
+    }
+
+    /**
+     * Look up the position an agent is in.
+     *
+     * @param state   the state of the game
+     * @param agentID the agent to move
+     * @return the statistics of the position, or null if it is not in the book
+     */
+    public Entry lookup(GameState state, int agentID) {
+        long key = toStoredKey(ZobristHash.hashInformationState(state, agentID));
+        int slot = getFirstSlot(key, capacity);
+        for (int probes = 0; probes < capacity; probes++) {
+            int offset = getOffset(slot);
+            long storedKey = buffer.getLong(offset);
+            if (storedKey == EMPTY_KEY) {
+                return null;
+            }
+            if (storedKey == key) {
+                return readEntry(buffer, offset);
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+        return null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private static Entry readEntry(ByteBuffer buffer, int offset) {
+        Entry entry = new Entry();
+        for (int actionId = 0; actionId < ActionIds.NUM_ACTIONS; actionId++) {
+            entry.visits[actionId] = buffer.getInt(offset + 8 + actionId * 4);
+            entry.values[actionId] = buffer.getFloat(offset + 8 + (ActionIds.NUM_ACTIONS + actionId) * 4);
+        }
+        return entry;
+    }
+
+    private static long toStoredKey(long hash) {
+        // 0 marks empty slots, so it cannot be a key.
+        return hash == EMPTY_KEY ? 1 : hash;
+    }
+
+    private static int getFirstSlot(long key, int capacity) {
+        return (int) (key ^ (key >>> 32)) & (capacity - 1);
+    }
+
+    private static int getOffset(int slot) {
+        return HEADER_SIZE + slot * ENTRY_SIZE;
+    }
+}
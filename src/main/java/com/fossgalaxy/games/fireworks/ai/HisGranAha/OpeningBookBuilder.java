@@ -0,0 +1,81 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.GameRunner;
+import com.fossgalaxy.games.fireworks.ai.AgentPlayer;
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.actions.Action;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the opening book offline.
+ *
+ * Seeded games are played by MCTS agents which search deeply on the first moves of each game and
+ * quickly afterwards. The root statistics of every deep search are merged by information state
+ * (positions reached in several games add up their visits) and written to the book file.
+ *
+ * Usage: OpeningBookBuilder [output file] [games per player count] [book moves] [deep budget in ms]
+ */
+public class OpeningBookBuilder {
+    private static final int FAST_BUDGET = 100;
+
+    public static void main(String[] args) {
+        String outputPath = args.length > 0 ? args[0] : OpeningBook.DEFAULT_PATH;
+        int numGames = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int bookMoves = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int deepBudget = args.length > 3 ? Integer.parseInt(args[3]) : 10_000;
+        long baseSeed = 1;
+
+        Map<Long, OpeningBook.Entry> entries = new HashMap<>();
+        for (int playerCount = 2; playerCount <= 5; playerCount++) {
+            for (int i = 0; i < numGames; i++) {
+                GameRunner runner = new GameRunner("opening-book", playerCount);
+                for (int seat = 0; seat < playerCount; seat++) {
+                    MCTS agent = buildAgent(entries, bookMoves, deepBudget);
+                    runner.addNamedPlayer("mcts" + seat, new AgentPlayer("mcts" + seat, agent));
+                }
+                runner.playGame(baseSeed + i);
+                System.out.println(String.format("%d players, game %d: %d positions", playerCount, i, entries.size()));
+            }
+        }
+
+        try {
+            OpeningBook.write(outputPath, entries);
+            System.out.println(String.format("Wrote %d positions to %s", entries.size(), outputPath));
+        } catch (IOException e) {
+            System.err.println("Could not write the opening book: " + e.getMessage());
+        }
+    }
+
+    private static MCTS buildAgent(Map<Long, OpeningBook.Entry> entries, int bookMoves, int deepBudget) {
+        return new MCTS(MCTS.DEFAULT_ITERATIONS, MCTS.NO_LIMIT, MCTS.NO_LIMIT) {
+            @Override
+            public Action doMove(int agentID, GameState state) {
+                boolean inBook = state.getActionHistory().size() < bookMoves;
+                int budget = inBook ? deepBudget : FAST_BUDGET;
+                setMoveTime(budget);
+
+                Action action = super.doMove(agentID, state);
+                if (inBook && getLastRoot() != null) {
+                    recordRoot(entries, getLastRoot(), agentID, state);
+                }
+                return action;
+            }
+        };
+    }
+
+    private static void recordRoot(Map<Long, OpeningBook.Entry> entries, MCTSNode root, int agentID, GameState state) {
+        OpeningBook.Entry entry = new OpeningBook.Entry();
+        for (MCTSNode child : root.getChildren()) {
+            int actionId = ActionIds.getActionId(root.getEdgeAction(child), agentID, state.getPlayerCount());
+            entry.visits[actionId] = child.getVisits();
+            entry.values[actionId] = child.getVisits() == 0 ? 0 : child.getScore() / child.getVisits();
+        }
+        entries.merge(ZobristHash.hashInformationState(state, agentID), entry, (existing, added) -> {
+            existing.merge(added);
+            return existing;
+        });
+    }
+}
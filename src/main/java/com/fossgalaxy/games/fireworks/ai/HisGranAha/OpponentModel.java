@@ -0,0 +1,304 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.HistoryEntry;
+import com.fossgalaxy.games.fireworks.state.actions.Action;
+import com.fossgalaxy.games.fireworks.state.actions.DiscardCard;
+import com.fossgalaxy.games.fireworks.state.actions.PlayCard;
+import com.fossgalaxy.games.fireworks.state.actions.TellColour;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Model of how the other players behave, learned across games from their moves.
+ *
+ * For each partner (by name, as given by receiveID) it counts how often each type of action
+ * (discard, play, tell colour, tell value) was chosen, depending on how many information tokens
+ * were available. Rollouts can then sample the partners' moves from those frequencies instead of
+ * uniformly, and the model can serve as the expansion prior of progressive widening.
+ *
+ * The counts of a partner are stored as a single array, bucket major, so that they can be saved
+ * along with other per-player tables. The arrays of a snapshot are shared by agents playing on
+ * other threads, so every increment locks the array it updates.
+ *
+ * Agents built by name keep their model in memory unless a snapshot path is given with
+ * {@code -Dhanabi.opponentModel=opponent_model.bin}.
+ */
+public class OpponentModel implements ActionPrior, HistoryCursor.Listener {
+    public static final String DEFAULT_SNAPSHOT_PATH = "opponent_model.bin";
+    public static final String SNAPSHOT_PROPERTY = "hanabi.opponentModel";
+    public static final int NUM_TYPES = 4;
+    public static final int NUM_INFO_BUCKETS = 4;
+
+    private static final int DISCARD = 0;
+    private static final int PLAY = 1;
+    private static final int TELL_COLOUR = 2;
+    private static final int TELL_VALUE = 3;
+    private static final int MAX_INFO_TOKENS = 8;
+
+    private final Map<String, int[]> countsByName;
+    private final HistoryCursor cursor = new HistoryCursor();
+    private final ModelSnapshot snapshot;
+    private int[][] countsBySeat;
+    private int myID = -1;
+    // Estimate of the information tokens before the entry being processed, resynchronised on every update.
+    private int information = MAX_INFO_TOKENS;
+
+    /**
+     * Create a model kept in memory only.
+     */
+    public OpponentModel() {
+        this.countsByName = new HashMap<>();
+        this.snapshot = null;
+    }
+
+    /**
+     * Create a model counting into the tables of a snapshot, shared with the other agents using it and saved every
+     * few games.
+     *
+     * @param snapshot the snapshot of the counts, opened with tables of NUM_INFO_BUCKETS * NUM_TYPES counts
+     */
+    public OpponentModel(ModelSnapshot snapshot) {
+        this.countsByName = snapshot.getTables();
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Create the model of an agent built by name: counting into the snapshot given by the SNAPSHOT_PROPERTY system
+     * property, or kept in memory only if the property is not set.
+     *
+     * @return the model
+     */
+    public static OpponentModel fromSystemProperty() {
+        String path = System.getProperty(SNAPSHOT_PROPERTY);
+        if (path == null) {
+            return new OpponentModel();
+        }
+        return new OpponentModel(ModelSnapshot.open(path, NUM_INFO_BUCKETS * NUM_TYPES,
+                ModelSnapshot.DEFAULT_SAVE_INTERVAL));
+    }
+
+    /**
+     * Resolve the counts of the players of a new game.
+     *
+     * @param agentID the seat of the agent using the model, which is not modelled
+     * @param names   the names of the players, by seat
+     */
+    public void setPlayers(int agentID, String[] names) {
+        myID = agentID;
+        countsBySeat = new int[names.length][];
+        for (int seat = 0; seat < names.length; seat++) {
+            countsBySeat[seat] = getCounts(names[seat]);
+        }
+        cursor.reset();
+        information = MAX_INFO_TOKENS;
+        if (snapshot != null) {
+            snapshot.onGameStarted();
+        }
+    }
+
+    /**
+     * Learn from the moves made since the last update.
+     *
+     * @param state the current state of the game
+     */
+    public void update(GameState state) {
+        if (countsBySeat != null) {
+            cursor.advance(state.getActionHistory(), this);
+        }
+        information = state.getInfomation();
+    }
+
+    @Override
+    public void onEntry(HistoryEntry entry) {
+        if (entry.playerID < 0 || entry.playerID >= countsBySeat.length) {
+            return;
+        }
+
+        int type = getType(entry.action);
+        int[] counts = countsBySeat[entry.playerID];
+        synchronized (counts) {
+            counts[getBucket(information) * NUM_TYPES + type]++;
+        }
+        if (type == DISCARD) {
+            information = Math.min(MAX_INFO_TOKENS, information + 1);
+        } else if (type != PLAY) {
+            information = Math.max(0, information - 1);
+        }
+    }
+
+    /**
+     * Check whether the moves of a player are sampled from the model.
+     *
+     * @param playerID the seat of the player
+     * @return true for the other players of the current game
+     */
+    public boolean isModelled(int playerID) {
+        return countsBySeat != null && playerID != myID && playerID < countsBySeat.length;
+    }
+
+    /**
+     * Sample a move of a partner: its type is drawn from the frequencies of the partner, and the move
+     * uniformly among the legal ones of that type.
+     *
+     * @param legalActions the legal actions of the partner
+     * @param playerID     the seat of the partner
+     * @param information  the information tokens available
+     * @param random       the source of randomness
+     * @return the sampled action
+     */
+    public Action sampleAction(List<Action> legalActions, int playerID, int information, Random random) {
+        int availableTypes = 0;
+        for (Action action : legalActions) {
+            availableTypes |= 1 << getType(action);
+        }
+
+        int type = sampleType(playerID, information, availableTypes, random);
+        int ofType = 0;
+        for (Action action : legalActions) {
+            if (getType(action) == type) {
+                ofType++;
+            }
+        }
+        int pick = random.nextInt(ofType);
+        for (Action action : legalActions) {
+            if (getType(action) == type && pick-- == 0) {
+                return action;
+            }
+        }
+        return legalActions.get(random.nextInt(legalActions.size()));
+    }
+
+    /**
+     * Sample a move of a partner among action Ids, as sampleAction does among actions.
+     *
+     * @param actionIds   the legal action Ids of the partner, relative to the partner
+     * @param count       the number of legal action Ids
+     * @param playerID    the seat of the partner
+     * @param information the information tokens available
+     * @param random      the source of randomness
+     * @return the sampled action Id
+     */
+    public int sampleActionId(int[] actionIds, int count, int playerID, int information, Random random) {
+        int availableTypes = 0;
+        for (int i = 0; i < count; i++) {
+            availableTypes |= 1 << getType(actionIds[i]);
+        }
+
+        int type = sampleType(playerID, information, availableTypes, random);
+        int ofType = 0;
+        for (int i = 0; i < count; i++) {
+            if (getType(actionIds[i]) == type) {
+                ofType++;
+            }
+        }
+        int pick = random.nextInt(ofType);
+        for (int i = 0; i < count; i++) {
+            if (getType(actionIds[i]) == type && pick-- == 0) {
+                return actionIds[i];
+            }
+        }
+        return actionIds[random.nextInt(count)];
+    }
+
+    @Override
+    public double[] getPriors(List<Action> legalActions, int agentID, GameState state) {
+        double[] priors = new double[legalActions.size()];
+        if (!isModelled(agentID)) {
+            for (int i = 0; i < priors.length; i++) {
+                priors[i] = 1;
+            }
+            return priors;
+        }
+
+        int availableTypes = 0;
+        int[] ofType = new int[NUM_TYPES];
+        for (Action action : legalActions) {
+            availableTypes |= 1 << getType(action);
+            ofType[getType(action)]++;
+        }
+        int[] counts = countsBySeat[agentID];
+        int offset = getBucket(state.getInfomation()) * NUM_TYPES;
+        for (int i = 0; i < priors.length; i++) {
+            int type = getType(legalActions.get(i));
+            priors[i] = getWeight(counts, offset, type, availableTypes) / ofType[type];
+        }
+        return priors;
+    }
+
+    /**
+     * Get the counts of a player, creating them if the player was never seen.
+     *
+     * @param name the name of the player
+     * @return the counts of each action type in each information bucket, bucket major
+     */
+    public int[] getCounts(String name) {
+        return countsByName.computeIfAbsent(name, key -> new int[NUM_INFO_BUCKETS * NUM_TYPES]);
+    }
+
+    public Map<String, int[]> getAllCounts() {
+        return countsByName;
+    }
+
+    // Sampling may run on several rollout threads at once, so it does not use any scratch space.
+    private int sampleType(int playerID, int information, int availableTypes, Random random) {
+        int[] counts = countsBySeat[playerID];
+        int offset = getBucket(information) * NUM_TYPES;
+        double total = 0;
+        for (int type = 0; type < NUM_TYPES; type++) {
+            total += getWeight(counts, offset, type, availableTypes);
+        }
+
+        double pick = random.nextDouble() * total;
+        int sampled = -1;
+        for (int type = 0; type < NUM_TYPES; type++) {
+            double weight = getWeight(counts, offset, type, availableTypes);
+            if (weight > 0) {
+                sampled = type;
+                pick -= weight;
+                if (pick < 0) {
+                    break;
+                }
+            }
+        }
+        return sampled;
+    }
+
+    private static double getWeight(int[] counts, int offset, int type, int availableTypes) {
+        // One extra count per type, so that unseen behaviours stay possible.
+        return (availableTypes & (1 << type)) == 0 ? 0 : counts[offset + type] + 1;
+    }
+
+    private static int getBucket(int information) {
+        if (information == 0) {
+            return 0;
+        }
+        if (information <= 3) {
+            return 1;
+        }
+        return information < MAX_INFO_TOKENS ? 2 : 3;
+    }
+
+    private static int getType(Action action) {
+        if (action instanceof DiscardCard) {
+            return DISCARD;
+        }
+        if (action instanceof PlayCard) {
+            return PLAY;
+        }
+        return action instanceof TellColour ? TELL_COLOUR : TELL_VALUE;
+    }
+
+    private static int getType(int actionId) {
+        if (actionId < 5) {
+            return DISCARD;
+        }
+        if (actionId < 10) {
+            return PLAY;
+        }
+        return actionId % 10 < 5 ? TELL_COLOUR : TELL_VALUE;
+    }
+}
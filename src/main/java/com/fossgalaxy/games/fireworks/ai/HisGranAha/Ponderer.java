@@ -0,0 +1,93 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.GameState;
+
+import java.util.function.BooleanSupplier;
+
+/**
+ * Runs search iterations on a background thread while the other players are taking their turns.
+ *
+ * The iterations share the data structures of the agent, so the agent must call stop (which waits
+ * for the current iteration to finish) before touching them again. Pondering is not started after
+ * the last move of the agent in a game, and it also stops on its own when an iteration returns false
+ * (its simulated game is over) or when the time limit is reached, so a thread is never left running
+ * long after the game. The state of the game itself is never read from the background thread, as the
+ * game keeps changing it.
+ */
+public class Ponderer {
+    public static final long DEFAULT_MAX_PONDER_TIME = 10_000;
+
+    private final long maxPonderTime;
+    private Thread thread;
+    private volatile boolean stopRequested;
+    private volatile int iterations;
+
+    public Ponderer() {
+        this(DEFAULT_MAX_PONDER_TIME);
+    }
+
+    /**
+     * @param maxPonderTime the maximum time (in milliseconds) to ponder between two moves
+     */
+    public Ponderer(long maxPonderTime) {
+        this.maxPonderTime = maxPonderTime;
+    }
+
+    /**
+     * Whether the player about to move will get another turn after this one. Once the deck is empty,
+     * every move uses up one of the moves left, and the other players take theirs first.
+     *
+     * @param state the state of the game before the move
+     * @return true if the player moves again before the game ends
+     */
+    public static boolean hasNextTurn(GameState state) {
+        return state.getDeck().hasCardsLeft() || state.getMovesLeft() - 1 >= state.getPlayerCount();
+    }
+
+    /**
+     * Start pondering after our move, stopping any previous pondering first. Nothing is started when
+     * the move is our last one in the game.
+     *
+     * @param state     the state of the game before our move, only read by the calling thread
+     * @param iteration performs one search iteration and returns whether pondering can go on
+     * @return true if pondering was started
+     */
+    public boolean start(GameState state, BooleanSupplier iteration) {
+        stop();
+        if (!hasNextTurn(state)) {
+            return false;
+        }
+
+        stopRequested = false;
+        iterations = 0;
+        long finishTime = System.currentTimeMillis() + maxPonderTime;
+        thread = new Thread(() -> {
+            while (!stopRequested && System.currentTimeMillis() < finishTime && iteration.getAsBoolean()) {
+                iterations++;
+            }
+        }, "ponder");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Stop pondering and wait for the current iteration to finish.
+     *
+     * @return the number of iterations performed while pondering
+     */
+    public int stop() {
+        if (thread == null) {
+            return 0;
+        }
+
+        stopRequested = true;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        thread = null;
+        return iterations;
+    }
+}
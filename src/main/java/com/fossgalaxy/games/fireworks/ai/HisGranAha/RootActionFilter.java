@@ -0,0 +1,162 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.ai.rule.PlaySafeCard;
+import com.fossgalaxy.games.fireworks.ai.rule.Rule;
+import com.fossgalaxy.games.fireworks.state.Card;
+import com.fossgalaxy.games.fireworks.state.CardColour;
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.Hand;
+import com.fossgalaxy.games.fireworks.state.actions.Action;
+import com.fossgalaxy.games.fireworks.state.actions.DiscardCard;
+import com.fossgalaxy.games.fireworks.state.actions.TellColour;
+import com.fossgalaxy.games.fireworks.state.actions.TellValue;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Pre-search filter for the actions at the root of the search tree, built on the production rules
+ * that are also used by SampleRuleBased.
+ *
+ * A play that is known to be safe is returned without searching at all. Otherwise, the discards of
+ * cards that are known to be useless are collapsed into a single one (they all lead to the same
+ * outcome) and the tells that would not change what any card of the hand knows are pruned.
+ */
+public class RootActionFilter {
+    private static final CardColour[] COLOURS = { CardColour.RED, CardColour.BLUE, CardColour.GREEN, CardColour.ORANGE, CardColour.WHITE };
+    private static final int MAX_CARD_VALUE = 5;
+
+    private final Rule safePlayRule;
+
+    public RootActionFilter() {
+        this.safePlayRule = new PlaySafeCard();
+    }
+
+    /**
+     * Finds an action that is clearly the best one, so that no search is needed.
+     *
+     * @param agentID the agent about to move
+     * @param state   the current state of the game
+     * @return a play that is known to be safe, or null if there is none
+     */
+    public Action getForcedAction(int agentID, GameState state) {
+        if (safePlayRule.canFire(agentID, state)) {
+            return safePlayRule.execute(agentID, state);
+        }
+        return null;
+    }
+
+    /**
+     * Remove the actions that are not worth searching.
+     *
+     * @param agentID the agent about to move
+     * @param state   the current state of the game
+     * @param actions the actions the agent could take
+     * @return the actions that remain to be searched
+     */
+    public Collection<Action> filter(int agentID, GameState state, Collection<Action> actions) {
+        List<Action> remaining = new ArrayList<>();
+        boolean uselessDiscardKept = false;
+
+        for (Action action : actions) {
+            if (action instanceof DiscardCard) {
+                int slot = ((DiscardCard) action).slot;
+                if (isKnownUseless(state, state.getHand(agentID), slot)) {
+                    if (uselessDiscardKept) {
+                        continue;
+                    }
+                    uselessDiscardKept = true;
+                }
+            } else if (action instanceof TellColour) {
+                TellColour tell = (TellColour) action;
+                if (tell.player == agentID || !givesColourInformation(state.getHand(tell.player), tell.colour)) {
+                    continue;
+                }
+            } else if (action instanceof TellValue) {
+                TellValue tell = (TellValue) action;
+                if (tell.player == agentID || !givesValueInformation(state.getHand(tell.player), tell.value)) {
+                    continue;
+                }
+            }
+            remaining.add(action);
+        }
+
+        return remaining;
+    }
+
+    /**
+     * Check if the card in a slot is known to never be playable again.
+     */
+    private boolean isKnownUseless(GameState state, Hand hand, int slot) {
+        CardColour colour = hand.getKnownColour(slot);
+        Integer value = hand.getKnownValue(slot);
+
+        if (colour != null && state.getTableValue(colour) == MAX_CARD_VALUE) {
+            return true;
+        }
+        if (colour != null && value != null) {
+            return value <= state.getTableValue(colour);
+        }
+        if (value != null) {
+            int lowestTableValue = MAX_CARD_VALUE;
+            for (CardColour tableColour : COLOURS) {
+                lowestTableValue = Math.min(lowestTableValue, state.getTableValue(tableColour));
+            }
+            return value <= lowestTableValue;
+        }
+        return false;
+    }
+
+    /**
+     * Check if telling a colour changes what at least one card knows: a touched card that does not know its
+     * colour yet, or an untouched card that learns it is not that colour.
+     */
+    private boolean givesColourInformation(Hand hand, CardColour colour) {
+        for (int slot = 0; slot < hand.getSize(); slot++) {
+            Card card = hand.getCard(slot);
+            if (card == null) {
+                continue;
+            }
+            if (card.colour == colour ? hand.getKnownColour(slot) != colour : contains(hand.getPossibleColours(slot), colour)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if telling a value changes what at least one card knows: a touched card that does not know its
+     * value yet, or an untouched card that learns it is not that value.
+     */
+    private boolean givesValueInformation(Hand hand, int value) {
+        for (int slot = 0; slot < hand.getSize(); slot++) {
+            Card card = hand.getCard(slot);
+            if (card == null) {
+                continue;
+            }
+            if (card.value == value ? !Integer.valueOf(value).equals(hand.getKnownValue(slot)) : contains(hand.getPossibleValues(slot), value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(CardColour[] colours, CardColour colour) {
+        for (CardColour possible : colours) {
+            if (possible == colour) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int possible : values) {
+            if (possible == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
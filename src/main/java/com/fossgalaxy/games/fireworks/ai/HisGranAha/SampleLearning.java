@@ -1,9 +1,7 @@
 package com.fossgalaxy.games.fireworks.ai.HisGranAha;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Random;
 
 import com.fossgalaxy.games.fireworks.ai.Agent;
@@ -22,22 +20,61 @@ import com.fossgalaxy.games.fireworks.state.actions.Action;
  * https://git.fossgalaxy.com/iggi/hanabi/tree/master/src/main/java/com/fossgalaxy/games/fireworks/ai
  */
 public class SampleLearning implements Agent {
+	public static final String DEFAULT_SNAPSHOT_PATH = "sample_learning.bin";
 
-	private Map<String, Map<Action, Integer>> actionHistory;
+	private final ActionHistogram actionHistory;
+	private final ModelSnapshot snapshot;
+	private final HistoryCursor historyCursor;
+	private final HistoryCursor.Listener histogramUpdater;
 
 	private Random random;
 	private int myID;
 	private String[] currentPlayers;
+	private int playerCount;
 	
+	/**
+	 * Create the agent, learning in memory only: nothing is read or written on disk.
+	 */
 	public SampleLearning() {
-		this.actionHistory = new HashMap<>();
+		this(null);
+	}
+	
+	/**
+	 * Create the agent, starting from the histograms saved by a previous run.
+	 * 
+	 * Every agent created with the same path counts into the same histograms, which are saved every
+	 * few games and when the JVM shuts down. DEFAULT_SNAPSHOT_PATH is the usual path.
+	 * 
+	 * @param snapshotPath the path where the histograms are saved, or null to learn from scratch every run
+	 */
+	public SampleLearning(String snapshotPath) {
+		this.historyCursor = new HistoryCursor();
+		this.histogramUpdater = this::recordEntry;
+		
+		if (snapshotPath == null) {
+			this.snapshot = null;
+			this.actionHistory = new ActionHistogram();
+		} else {
+			this.snapshot = ModelSnapshot.open(snapshotPath, ActionIds.NUM_ACTIONS, ModelSnapshot.DEFAULT_SAVE_INTERVAL);
+			this.actionHistory = new ActionHistogram(snapshot.getTables());
+		}
 	}
 	
 	@Override
 	public void receiveID(int agentID, String[] names) {
 		this.myID = agentID;
 		this.currentPlayers = names;
+		this.playerCount = names.length;
 		this.random = new Random();
+		
+		// resolve the histogram of each seat once per game, and start reading the history of the new game
+		actionHistory.setPlayers(names);
+		historyCursor.reset();
+		
+		// the previous game is over, so this is a good time to save what was learned
+		if (snapshot != null) {
+			snapshot.onGameStarted();
+		}
 	}
 
 
@@ -61,56 +98,37 @@ public class SampleLearning implements Agent {
 	 * For the 'learning' track, this will work across games. You'd probably want to do something more
 	 * complex, but this is just provided as an example :).
 	 * 
+	 * Only the moves made since the last time the history was read are processed, whatever the
+	 * number of players.
+	 * 
 	 * @param state the current game state
 	 */
 	private void updateHistogram(GameState state) {
-		// calculate history for previous moves
-		List<HistoryEntry> lastMoves = getLastMoves(state);
-		for (HistoryEntry entry : lastMoves) {
-			
-			String playerName = currentPlayers[entry.playerID];
-			
-			//grab this histogram for this player
-			Map<Action, Integer> histogram = actionHistory.get(playerName);
-			if (histogram == null) {
-				histogram = new HashMap<>();
-				actionHistory.put(playerName, histogram);
-			}
-			
-			// update the histogram
-			int previousValue = histogram.getOrDefault(entry.action, 0);
-			histogram.put(entry.action, previousValue+1);
-		}
+		historyCursor.advance(state.getActionHistory(), histogramUpdater);
 	}
 	
 	/**
-	 * Method to get all moves made since this agent's last go.
+	 * Count a move of the history in the histogram of the player who made it.
 	 * 
-	 * @param state the current game state
-	 * @return the moves made since the agent's last go.
+	 * @param entry the entry of the history
 	 */
-	private List<HistoryEntry> getLastMoves(GameState state) {
-		List<HistoryEntry> allHistory = state.getActionHistory();
-		int historySize = allHistory.size();
-		
-		List<HistoryEntry> movesSinceLastGo = new ArrayList<>();
-		
-		//we want the last n moves, if possible
-		int movesToGet = Math.min(state.getPlayerCount(), historySize);
-		
-		for (int i = 0; i < movesToGet; i++) {
-			int moveIndex = (historySize - 1);
-			
-			//negative game events are events that don't belong to any player, eg. game setup
-			HistoryEntry entry = allHistory.get(moveIndex);
-			if (entry.playerID < 0) {
-				continue;
-			}
-			
-			movesSinceLastGo.add(allHistory.get(moveIndex));
+	private void recordEntry(HistoryEntry entry) {
+		//negative game events are events that don't belong to any player, eg. game setup
+		if (entry.playerID < 0) {
+			return;
 		}
 		
-		return movesSinceLastGo;
+		actionHistory.record(entry.playerID, ActionIds.getActionId(entry.action, entry.playerID, playerCount));
+	}
+	
+	/**
+	 * Get the histogram learned so far for a player.
+	 * 
+	 * @param playerName the name of the player
+	 * @return the number of times the player made each move, by action Id relative to the player
+	 */
+	public int[] getHistogram(String playerName) {
+		return actionHistory.getCounts(playerName);
 	}
 
 }
@@ -0,0 +1,159 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * What happened during the search of one move: how many iterations and nodes, how deep the search
+ * went, where the time went, how often the caches (transposition table, visited states) were hit,
+ * how much time the garbage collector took, and the resulting statistics of the root actions.
+ *
+ * The agents fill it while searching only when a TelemetryListener is set, timing each phase with
+ * System.nanoTime. Phases an agent does not have (HisGranAha has no rollouts) are left at 0.
+ */
+public class SearchTelemetry {
+
+    /**
+     * The phases the time of a search is split across.
+     */
+    public enum Phase {
+        DETERMINIZE, SELECT, EXPAND, ROLLOUT, BACKUP, NN
+    }
+
+    public final String agent;
+    public final int agentID;
+    public final int move;
+
+    public int iterations;
+    public int nodesAllocated;
+    public int maxDepth;
+    public long totalDepth;
+    public long cacheLookups;
+    public long cacheHits;
+    public final long[] phaseNanos = new long[Phase.values().length];
+    public long durationNanos;
+    public long gcMillis;
+
+    // Visits and mean value of each root action, by action Id relative to the agent.
+    public final int[] rootVisits = new int[ActionIds.NUM_ACTIONS];
+    public final double[] rootValues = new double[ActionIds.NUM_ACTIONS];
+
+    private final long startNanos;
+    private final long startGcMillis;
+
+    /**
+     * Start recording the search of a move.
+     *
+     * @param agent   the name of the agent, as given to it by the game
+     * @param agentID the seat of the agent
+     * @param move    the number of moves made in the game so far
+     */
+    public SearchTelemetry(String agent, int agentID, int move) {
+        this.agent = agent;
+        this.agentID = agentID;
+        this.move = move;
+        this.startGcMillis = getGcMillis();
+        this.startNanos = System.nanoTime();
+    }
+
+    public void addPhase(Phase phase, long nanos) {
+        phaseNanos[phase.ordinal()] += nanos;
+    }
+
+    public void recordDepth(int depth) {
+        totalDepth += depth;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    public void recordLookup(boolean hit) {
+        cacheLookups++;
+        if (hit) {
+            cacheHits++;
+        }
+    }
+
+    /**
+     * Stop recording, once the search is over.
+     */
+    public void finish() {
+        durationNanos = System.nanoTime() - startNanos;
+        gcMillis = getGcMillis() - startGcMillis;
+    }
+
+    public double getMeanDepth() {
+        return iterations == 0 ? 0 : (double) totalDepth / iterations;
+    }
+
+    public double getCacheHitRate() {
+        return cacheLookups == 0 ? 0 : (double) cacheHits / cacheLookups;
+    }
+
+    /**
+     * @return the telemetry as a single line JSON object
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder(512);
+        json.append("{\"agent\":\"");
+        appendEscaped(json, agent);
+        json.append('"')
+                .append(",\"agentID\":").append(agentID)
+                .append(",\"move\":").append(move)
+                .append(",\"iterations\":").append(iterations)
+                .append(",\"nodesAllocated\":").append(nodesAllocated)
+                .append(",\"maxDepth\":").append(maxDepth)
+                .append(",\"meanDepth\":").append(format(getMeanDepth()))
+                .append(",\"durationMs\":").append(format(durationNanos / 1e6))
+                .append(",\"phasesMs\":{");
+        for (Phase phase : Phase.values()) {
+            if (phase.ordinal() > 0) {
+                json.append(',');
+            }
+            json.append('"').append(phase.name().toLowerCase(Locale.ROOT)).append("\":")
+                    .append(format(phaseNanos[phase.ordinal()] / 1e6));
+        }
+        json.append("},\"cacheLookups\":").append(cacheLookups)
+                .append(",\"cacheHitRate\":").append(format(getCacheHitRate()))
+                .append(",\"gcMs\":").append(gcMillis)
+                .append(",\"root\":[");
+        boolean first = true;
+        for (int actionId = 0; actionId < rootVisits.length; actionId++) {
+            if (rootVisits[actionId] == 0) {
+                continue;
+            }
+            if (!first) {
+                json.append(',');
+            }
+            first = false;
+            json.append("{\"action\":").append(actionId)
+                    .append(",\"visits\":").append(rootVisits[actionId])
+                    .append(",\"value\":").append(format(rootValues[actionId])).append('}');
+        }
+        return json.append("]}").toString();
+    }
+
+    private static void appendEscaped(StringBuilder json, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static long getGcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, collector.getCollectionTime());
+        }
+        return total;
+    }
+}
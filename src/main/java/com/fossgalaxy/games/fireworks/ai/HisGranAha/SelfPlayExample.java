@@ -0,0 +1,20 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+/**
+ * A training example generated by an agent playing against copies of itself.
+ */
+public class SelfPlayExample {
+    public final double[] features;
+    public final double[] policy;
+    public double value;
+
+    /**
+     * Constructs an example whose value is not known until the game has finished.
+     * @param features The normalized flattened representation of the state.
+     * @param policy The visit distribution of the search over the 60 action Ids.
+     */
+    public SelfPlayExample(double[] features, double[] policy) {
+        this.features = features;
+        this.policy = policy;
+    }
+}
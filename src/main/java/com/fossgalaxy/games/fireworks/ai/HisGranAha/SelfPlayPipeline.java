@@ -0,0 +1,275 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.GameRunner;
+import com.fossgalaxy.games.fireworks.GameStats;
+import com.fossgalaxy.games.fireworks.ai.AgentPlayer;
+import com.fossgalaxy.games.fireworks.ai.Tournament;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Continuously improves the model used by HisGranAha within a single process.
+ *
+ * Self-play workers play games with the current model and push the resulting examples into a
+ * sliding replay window. A trainer thread repeatedly trains a copy of the current model on that
+ * window and plays a gating match between the candidate and the current model on the same deals;
+ * the candidate is promoted only if its mean gain in score is larger than the 95% confidence
+ * interval of that gain, so that noise alone rarely promotes a model. Promotions go through the ModelRegistry, so the
+ * agents swap the new weights in between moves and searching never waits for training.
+ */
+public class SelfPlayPipeline {
+    // Default values for the pipeline configuration.
+    public static final int DEFAULT_REPLAY_WINDOW = 50_000;
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final int DEFAULT_TRAIN_STEPS = 500;
+    public static final int DEFAULT_GATING_GAMES = 20;
+    public static final int DEFAULT_TIME_LIMIT = 100;
+
+    // Attributes of the class.
+    private final ModelRegistry registry;
+    private final int playerCount;
+    private final int selfPlayWorkers;
+    private final List<SelfPlayExample> replayWindow;
+    private final Random random;
+    private final Logger logger = LoggerFactory.getLogger(SelfPlayPipeline.class);
+
+    private int replayWindowSize = DEFAULT_REPLAY_WINDOW;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int trainSteps = DEFAULT_TRAIN_STEPS;
+    private int gatingGames = DEFAULT_GATING_GAMES;
+    private int timeLimit = DEFAULT_TIME_LIMIT;
+    private String promotedModelPath;
+    private int oldestExampleIndex;
+
+    private volatile boolean running;
+    private ExecutorService selfPlayExecutor;
+    private Thread trainerThread;
+
+    /**
+     * Constructs a pipeline improving the model held by the given registry.
+     * @param registry The registry holding the model currently used by the agents.
+     * @param playerCount The number of players in the self-play games.
+     * @param selfPlayWorkers The number of games played concurrently.
+     */
+    public SelfPlayPipeline(ModelRegistry registry, int playerCount, int selfPlayWorkers) {
+        this.registry = registry;
+        this.playerCount = playerCount;
+        this.selfPlayWorkers = selfPlayWorkers;
+        this.replayWindow = new ArrayList<>();
+        this.random = new Random();
+    }
+
+    public void setReplayWindowSize(int replayWindowSize) {
+        this.replayWindowSize = replayWindowSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public void setTrainSteps(int trainSteps) {
+        this.trainSteps = trainSteps;
+    }
+
+    public void setGatingGames(int gatingGames) {
+        this.gatingGames = gatingGames;
+    }
+
+    /**
+     * Sets the time (in milliseconds) that the agents can spend on each move of the self-play and
+     * gating games.
+     * @param timeLimit The time limit per move.
+     */
+    public void setTimeLimit(int timeLimit) {
+        this.timeLimit = timeLimit;
+    }
+
+    /**
+     * Sets the path where every promoted model is saved, so that it can be used after a restart.
+     * @param promotedModelPath The path where to save the promoted models, or null to not save them.
+     */
+    public void setPromotedModelPath(String promotedModelPath) {
+        this.promotedModelPath = promotedModelPath;
+    }
+
+    /**
+     * Starts the self-play workers and the trainer thread.
+     */
+    public void start() {
+        running = true;
+        selfPlayExecutor = Executors.newFixedThreadPool(selfPlayWorkers);
+        for (int i = 0; i < selfPlayWorkers; i++) {
+            selfPlayExecutor.submit(this::selfPlayLoop);
+        }
+        trainerThread = new Thread(this::trainLoop, "self-play-trainer");
+        trainerThread.start();
+    }
+
+    /**
+     * Stops the pipeline once the games and training steps in progress have finished.
+     * @throws InterruptedException The calling thread was interrupted while waiting.
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        selfPlayExecutor.shutdown();
+        selfPlayExecutor.awaitTermination(1, TimeUnit.HOURS);
+        trainerThread.join();
+    }
+
+    private void selfPlayLoop() {
+        Random workerRandom = new Random();
+        while (running) {
+            // A failing game must not silently end the worker, leaving the trainer with fewer producers.
+            try {
+                playSelfPlayGame(workerRandom);
+            } catch (RuntimeException e) {
+                logger.error("self-play game failed", e);
+                sleepQuietly(1000);
+            }
+        }
+    }
+
+    private void playSelfPlayGame(Random workerRandom) {
+        List<HisGranAha> agents = new ArrayList<>();
+        for (int i = 0; i < playerCount; i++) {
+            HisGranAha agent = new HisGranAha(registry, timeLimit);
+            agent.setRecordExamples(true);
+            agents.add(agent);
+        }
+
+        int score = playGame(agents, workerRandom.nextLong());
+
+        // The value target of every example is the outcome of the game it was played in.
+        List<SelfPlayExample> examples = new ArrayList<>();
+        for (HisGranAha agent : agents) {
+            examples.addAll(agent.drainExamples());
+        }
+        for (SelfPlayExample example : examples) {
+            example.value = score / (double) NNState.MAX_SCORE;
+        }
+        addToReplayWindow(examples);
+    }
+
+    private void trainLoop() {
+        while (running) {
+            if (getReplayWindowCount() < batchSize) {
+                sleepQuietly(1000);
+                continue;
+            }
+
+            NeuralNetwork candidate = registry.copyCurrent();
+            for (int step = 0; step < trainSteps && running; step++) {
+                trainStep(candidate);
+            }
+
+            if (running && winsGatingMatch(candidate)) {
+                registry.promote(candidate);
+                logger.info("promoted model version {}", registry.getVersion());
+                saveModel(candidate);
+            }
+        }
+    }
+
+    private void trainStep(NeuralNetwork candidate) {
+        double[][] features = new double[batchSize][];
+        double[][] policies = new double[batchSize][];
+        double[] values = new double[batchSize];
+
+        synchronized (replayWindow) {
+            for (int i = 0; i < batchSize; i++) {
+                SelfPlayExample example = replayWindow.get(random.nextInt(replayWindow.size()));
+                features[i] = example.features;
+                policies[i] = example.policy;
+                values[i] = example.value;
+            }
+        }
+
+        candidate.fit(features, policies, values);
+    }
+
+    /**
+     * Plays the same deals with the candidate and with the current model.
+     * @param candidate The model that was just trained.
+     * @return Whether the candidate scored significantly more than the current model on average.
+     */
+    private boolean winsGatingMatch(NeuralNetwork candidate) {
+        ModelRegistry candidateRegistry = new ModelRegistry(candidate);
+        List<Integer> gains = new ArrayList<>();
+
+        for (int i = 0; i < gatingGames && running; i++) {
+            long seed = random.nextLong();
+            int candidateScore = playGame(buildAgents(candidateRegistry), seed);
+            gains.add(candidateScore - playGame(buildAgents(registry), seed));
+        }
+
+        // The games are paired by deal, so the gains of the candidate have much less variance than the scores.
+        Tournament.Summary gain = new Tournament.Summary(gains);
+        logger.info("gating match: candidate gain: {} +/- {} over {} deals", gain.mean, gain.confidenceInterval, gain.games);
+        return gain.games > 1 && gain.mean > gain.confidenceInterval;
+    }
+
+    private List<HisGranAha> buildAgents(ModelRegistry modelRegistry) {
+        List<HisGranAha> agents = new ArrayList<>();
+        for (int i = 0; i < playerCount; i++) {
+            agents.add(new HisGranAha(modelRegistry, timeLimit));
+        }
+        return agents;
+    }
+
+    private int playGame(List<HisGranAha> agents, long seed) {
+        GameRunner runner = new GameRunner("self-play", playerCount);
+        for (int i = 0; i < agents.size(); i++) {
+            String name = "HisGranAha" + i;
+            runner.addNamedPlayer(name, new AgentPlayer(name, agents.get(i)));
+        }
+        GameStats stats = runner.playGame(seed);
+        return stats.score;
+    }
+
+    private void addToReplayWindow(List<SelfPlayExample> examples) {
+        synchronized (replayWindow) {
+            // Once the window is full, every new example replaces the oldest one.
+            for (SelfPlayExample example : examples) {
+                if (replayWindow.size() < replayWindowSize) {
+                    replayWindow.add(example);
+                } else {
+                    replayWindow.set(oldestExampleIndex, example);
+                    oldestExampleIndex = (oldestExampleIndex + 1) % replayWindowSize;
+                }
+            }
+        }
+    }
+
+    private int getReplayWindowCount() {
+        synchronized (replayWindow) {
+            return replayWindow.size();
+        }
+    }
+
+    private void saveModel(NeuralNetwork model) {
+        if (promotedModelPath == null)
+            return;
+
+        try {
+            model.saveModel(promotedModelPath, true);
+        } catch (IOException e) {
+            System.err.println("Could not save the promoted model: " + e.getMessage());
+        }
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
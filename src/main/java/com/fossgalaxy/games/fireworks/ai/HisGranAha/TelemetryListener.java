@@ -0,0 +1,15 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+/**
+ * Receives the telemetry of every search performed by an agent.
+ *
+ * Listeners are called on the thread of the agent, at the end of each move, so they should return
+ * quickly; see JsonLinesTelemetrySink.
+ */
+public interface TelemetryListener {
+
+    /**
+     * @param telemetry the telemetry of the search that was just performed
+     */
+    void onMove(SearchTelemetry telemetry);
+}
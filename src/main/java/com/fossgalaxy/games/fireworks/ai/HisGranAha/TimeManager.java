@@ -0,0 +1,134 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.GameState;
+
+/**
+ * Decides how much time an agent can spend searching on each move.
+ *
+ * The agent gets a time bank for the whole game, equal to the default time per move multiplied by
+ * the expected number of moves it will make. Each move receives an even share of what is left in
+ * the bank, scaled up for critical positions (last life, low clarity of the previous search) and
+ * scaled down for simple ones (first move, no information tokens, empty deck).
+ */
+public class TimeManager {
+    // Default values for the time allocation (in milliseconds).
+    public static final int DEFAULT_MOVE_TIME = 950;
+    public static final int DEFAULT_MIN_MOVE_TIME = 100;
+    public static final int DEFAULT_MAX_MOVE_TIME = 3000;
+
+    // Estimated number of turns per card left in the deck, as not every move draws a card.
+    private static final double TURNS_PER_CARD = 1.5;
+
+    // Attributes of the class.
+    private final int moveTime;
+    private final int minMoveTime;
+    private final int maxMoveTime;
+
+    private long timeBank;
+    private int lastHistorySize;
+    private double lastRootClarity;
+
+    /**
+     * Constructs a time manager with the default time per move and bounds.
+     */
+    public TimeManager() {
+        this(DEFAULT_MOVE_TIME, DEFAULT_MIN_MOVE_TIME, DEFAULT_MAX_MOVE_TIME);
+    }
+
+    /**
+     * Constructs a time manager.
+     * @param moveTime The average time (in milliseconds) that a move should take.
+     * @param minMoveTime The minimum time (in milliseconds) that is given to a move.
+     * @param maxMoveTime The maximum time (in milliseconds) that is given to a move.
+     */
+    public TimeManager(int moveTime, int minMoveTime, int maxMoveTime) {
+        this.moveTime = moveTime;
+        this.minMoveTime = minMoveTime;
+        this.maxMoveTime = maxMoveTime;
+        this.timeBank = -1;
+    }
+
+    /**
+     * Calculates the time budget for the move that is about to be made. A new game is detected when
+     * the action history is shorter than on the previous move, which resets the time bank.
+     * @param state The current state of the game.
+     * @param agentID The Id of the agent that is about to move.
+     * @return The time (in milliseconds) that can be spent searching on this move.
+     */
+    public long getMoveBudget(GameState state, int agentID) {
+        int historySize = state.getActionHistory().size();
+        if (timeBank < 0 || historySize < lastHistorySize) {
+            timeBank = (long) moveTime * estimateMovesLeft(state);
+            lastRootClarity = -1;
+        }
+        lastHistorySize = historySize;
+
+        long fairShare = timeBank / estimateMovesLeft(state);
+        double budget = fairShare * getPhaseFactor(state) * getClarityFactor();
+        budget = Math.min(budget, timeBank);
+        return Math.max(minMoveTime, Math.min(maxMoveTime, Math.round(budget)));
+    }
+
+    /**
+     * Registers the time that was actually spent on a move and how clear its result was.
+     * @param timeSpent The time (in milliseconds) spent on the move.
+     * @param rootClarity The share of the root visits that went to the most visited action.
+     */
+    public void moveFinished(long timeSpent, double rootClarity) {
+        timeBank = Math.max(0, timeBank - timeSpent);
+        lastRootClarity = rootClarity;
+    }
+
+    /**
+     * Estimates how many more moves the agent will make in the game, including the current one.
+     * @param state The current state of the game.
+     * @return The estimated number of moves left for the agent.
+     */
+    protected int estimateMovesLeft(GameState state) {
+        int playerCount = state.getPlayerCount();
+        double turnsLeft = state.getDeck().getCardsLeft() * TURNS_PER_CARD + playerCount;
+        return Math.max(1, (int) Math.ceil(turnsLeft / playerCount));
+    }
+
+    /**
+     * Scales the time of a move according to the phase of the game.
+     * @param state The current state of the game.
+     * @return The factor to multiply the fair share of the time bank with.
+     */
+    protected double getPhaseFactor(GameState state) {
+        double factor = 1.0;
+
+        // At the start of the game nothing is known yet, so there is little to think about.
+        if (state.getActionHistory().size() < state.getPlayerCount()) {
+            factor *= 0.6;
+        }
+
+        // Once the deck is empty every player has at most one move left.
+        if (!state.getDeck().hasCardsLeft()) {
+            factor *= 0.5;
+        }
+
+        // Without information tokens there are no tell actions to choose from.
+        if (state.getInfomation() == 0) {
+            factor *= 0.7;
+        }
+
+        // A mistake on the last life ends the game.
+        if (state.getLives() == 1) {
+            factor *= 1.5;
+        }
+
+        return factor;
+    }
+
+    /**
+     * Scales the time of a move according to how clear the result of the previous search was. A
+     * search that strongly preferred one action suggests the game is in an easy stretch.
+     * @return The factor to multiply the fair share of the time bank with.
+     */
+    protected double getClarityFactor() {
+        if (lastRootClarity < 0)
+            return 1.0;
+        return 1.3 - 0.6 * lastRootClarity;
+    }
+}
@@ -0,0 +1,220 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.parallelism.ParallelWrapper;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Drives the training of a NeuralNetwork using data-parallel workers on all the local cores.
+ *
+ * Every epoch is run through a DL4J ParallelWrapper (either averaging the parameters of the workers
+ * or sharing their gradients), which prefetches the training batches asynchronously. After each epoch the
+ * model is evaluated on the held-out data, checkpointed periodically and training is stopped early
+ * once the validation loss has not improved for a number of epochs, leaving the network with the
+ * weights of its best epoch.
+ */
+public class TrainingDriver {
+    // Default values for the training configuration.
+    public static final int DEFAULT_PREFETCH_BUFFER = 16;
+    public static final int DEFAULT_AVERAGING_FREQUENCY = 3;
+    public static final int DEFAULT_CHECKPOINT_FREQUENCY = 5;
+    public static final int DEFAULT_PATIENCE = 10;
+
+    // Attributes of the class.
+    private final NeuralNetwork nn;
+    private final int workers;
+    private final ParallelWrapper.TrainingMode trainingMode;
+    private final Logger logger = LoggerFactory.getLogger(TrainingDriver.class);
+
+    private int prefetchBuffer = DEFAULT_PREFETCH_BUFFER;
+    private int averagingFrequency = DEFAULT_AVERAGING_FREQUENCY;
+    private int checkpointFrequency = DEFAULT_CHECKPOINT_FREQUENCY;
+    private int patience = DEFAULT_PATIENCE;
+    private String checkpointPath = "checkpoint.zip";
+    private String bestModelPath = "best_model.zip";
+
+    /**
+     * Constructs a driver that trains the given network with one worker per available core, averaging
+     * the parameters of the workers.
+     * @param nn The network to be trained. Its training (and optionally validation) data must be set.
+     */
+    public TrainingDriver(NeuralNetwork nn) {
+        this(nn, Runtime.getRuntime().availableProcessors(), ParallelWrapper.TrainingMode.AVERAGING);
+    }
+
+    /**
+     * Constructs a driver that trains the given network.
+     * @param nn The network to be trained. Its training (and optionally validation) data must be set.
+     * @param workers The number of workers (each with its own copy of the model) used for training.
+     * @param trainingMode Whether the workers average their parameters or share their gradients.
+     */
+    public TrainingDriver(NeuralNetwork nn, int workers, ParallelWrapper.TrainingMode trainingMode) {
+        this.nn = nn;
+        this.workers = workers;
+        this.trainingMode = trainingMode;
+    }
+
+    public void setPrefetchBuffer(int prefetchBuffer) {
+        this.prefetchBuffer = prefetchBuffer;
+    }
+
+    public void setAveragingFrequency(int averagingFrequency) {
+        this.averagingFrequency = averagingFrequency;
+    }
+
+    /**
+     * Sets how often (in epochs) the model is checkpointed and where it is saved.
+     * @param checkpointFrequency The number of epochs between two checkpoints.
+     * @param checkpointPath The path where the latest checkpoint is saved.
+     * @param bestModelPath The path where the model with the lowest validation loss is saved.
+     */
+    public void setCheckpoints(int checkpointFrequency, String checkpointPath, String bestModelPath) {
+        this.checkpointFrequency = checkpointFrequency;
+        this.checkpointPath = checkpointPath;
+        this.bestModelPath = bestModelPath;
+    }
+
+    /**
+     * Sets the number of epochs without improvement of the validation loss after which training stops.
+     * @param patience The number of epochs to wait for an improvement.
+     */
+    public void setPatience(int patience) {
+        this.patience = patience;
+    }
+
+    /**
+     * Trains the network for at most the given number of epochs. When there is validation data, the
+     * network ends up with the weights of the epoch with the lowest validation loss rather than
+     * those of the last epoch.
+     * @param maxEpochs The maximum number of epochs to train the model.
+     * @return The lowest validation loss that was reached (NaN if no validation data was set).
+     * @throws IOException A checkpoint could not be written.
+     */
+    public double train(int maxEpochs) throws IOException {
+        ComputationGraph model = nn.getModel();
+        MultiDataSetIterator trainIterator = nn.getTrainIterator();
+        long examplesPerEpoch = countExamples(trainIterator);
+
+        ParallelWrapper wrapper = new ParallelWrapper.Builder<>(model)
+                .workers(workers)
+                .prefetchBuffer(prefetchBuffer)
+                .averagingFrequency(averagingFrequency)
+                .reportScoreAfterAveraging(true)
+                .trainingMode(trainingMode)
+                .build();
+
+        double bestLoss = Double.MAX_VALUE;
+        INDArray bestParams = null;
+        int epochsWithoutImprovement = 0;
+        try {
+            for (int epoch = 1; epoch <= maxEpochs; epoch++) {
+                // The wrapper prefetches prefetchBuffer batches itself, and shuts its prefetching thread down with it.
+                trainIterator.reset();
+
+                long startTime = System.nanoTime();
+                wrapper.fit(trainIterator);
+                double seconds = (System.nanoTime() - startTime) / 1e9;
+
+                double loss = nn.evaluate();
+                logger.info("epoch {}: {} examples/s, train score: {}, validation loss: {}",
+                        epoch, Math.round(examplesPerEpoch / seconds), model.score(), loss);
+
+                if (epoch % checkpointFrequency == 0) {
+                    nn.saveModel(checkpointPath, true);
+                }
+
+                // Without held-out data there is nothing to stop early on.
+                if (Double.isNaN(loss)) {
+                    continue;
+                }
+
+                if (loss < bestLoss) {
+                    bestLoss = loss;
+                    bestParams = model.params().dup();
+                    epochsWithoutImprovement = 0;
+                    nn.saveModel(bestModelPath, true);
+                } else if (++epochsWithoutImprovement >= patience) {
+                    logger.info("stopping early after {} epochs, best validation loss: {}", epoch, bestLoss);
+                    break;
+                }
+            }
+        } finally {
+            wrapper.shutdown();
+        }
+
+        // The last epochs did not improve on the best one, so its weights are the ones to keep.
+        if (bestParams != null) {
+            model.setParams(bestParams);
+        }
+
+        return bestLoss == Double.MAX_VALUE ? Double.NaN : bestLoss;
+    }
+
+    /**
+     * Splits a data file into a training file and a held-out validation file. The skipped lines at
+     * the top of the file (i.e. the column names) are copied to both of them.
+     * @param dataSetPath The path to the data file to split.
+     * @param numLinesSkip Number of lines at the top of the file that are not examples.
+     * @param validationFraction The fraction of the examples that goes to the validation file.
+     * @param seed The seed used for shuffling the examples before splitting them.
+     * @param trainPath The path where the training examples are written.
+     * @param validationPath The path where the validation examples are written.
+     * @throws IOException One of the files could not be read or written.
+     */
+    public static void splitDataFile(String dataSetPath, int numLinesSkip, double validationFraction, long seed,
+                                     String trainPath, String validationPath) throws IOException {
+        List<String> header = new ArrayList<>();
+        List<String> examples = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(dataSetPath), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (header.size() < numLinesSkip) {
+                    header.add(line);
+                } else {
+                    examples.add(line);
+                }
+            }
+        }
+
+        Collections.shuffle(examples, new Random(seed));
+        int validationSize = (int) Math.round(examples.size() * validationFraction);
+        writeLines(validationPath, header, examples.subList(0, validationSize));
+        writeLines(trainPath, header, examples.subList(validationSize, examples.size()));
+    }
+
+    private static void writeLines(String path, List<String> header, List<String> lines) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8)) {
+            for (String line : header) {
+                writer.write(line);
+                writer.newLine();
+            }
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+
+    private static long countExamples(MultiDataSetIterator iterator) {
+        long examples = 0;
+        iterator.reset();
+        while (iterator.hasNext()) {
+            examples += iterator.next().getFeatures(0).size(0);
+        }
+        return examples;
+    }
+}
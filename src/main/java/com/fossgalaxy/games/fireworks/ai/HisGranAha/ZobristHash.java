@@ -0,0 +1,312 @@
+package com.fossgalaxy.games.fireworks.ai.HisGranAha;
+
+import com.fossgalaxy.games.fireworks.state.Card;
+import com.fossgalaxy.games.fireworks.state.CardColour;
+import com.fossgalaxy.games.fireworks.state.GameState;
+import com.fossgalaxy.games.fireworks.state.Hand;
+import com.fossgalaxy.games.fireworks.state.HistoryEntry;
+import com.fossgalaxy.games.fireworks.state.actions.Action;
+import com.fossgalaxy.games.fireworks.state.actions.DiscardCard;
+import com.fossgalaxy.games.fireworks.state.actions.PlayCard;
+import com.fossgalaxy.games.fireworks.state.actions.TellColour;
+import com.fossgalaxy.games.fireworks.state.actions.TellValue;
+
+import java.util.Random;
+
+/**
+ * Zobrist-style 64-bit hashing of simulated game states.
+ *
+ * The hash covers the cards in every hand together with what their owners know about them, the
+ * table, the discard pile, the information tokens, the lives, the moves left once the deck is
+ * empty and the player to move. The order of the deck is not part of the hash, as it is hidden to
+ * every player. Instead of hashing the whole state on every visit, the hash of a state is updated
+ * with the few keys an action changes.
+ *
+ * A state can also be hashed as seen by an observer, leaving out the cards of the observer's own
+ * hand (only what it knows about them counts). A search over determinized states uses the view of
+ * the searching agent, so that the cards sampled for its hand do not change the hash.
+ */
+public final class ZobristHash {
+    public static final int MAX_PLAYERS = 5;
+    public static final int MAX_HAND_SIZE = 5;
+    public static final int NUM_CARD_TYPES = 25;
+
+    private static final CardColour[] COLOURS = { CardColour.RED, CardColour.BLUE, CardColour.GREEN, CardColour.ORANGE, CardColour.WHITE };
+    private static final int MAX_COPIES = 3;
+    private static final int MAX_INFO_TOKENS = 8;
+    private static final int MAX_LIVES = 3;
+    // Turns from which hashInformationState stops telling them apart.
+    private static final int MAX_TURN = 63;
+    // Observer of the states hashed with every card visible.
+    private static final int NO_OBSERVER = -1;
+    // The moves left only count down once the deck is empty, from at most one per player and one more.
+    private static final int MAX_MOVES_LEFT = MAX_PLAYERS + 1;
+    private static final long SEED = 0x48616E616269L;
+
+    // Keys for a card (or an empty slot, the last type) in a slot of a hand.
+    private static final long[][][] HAND_KEYS = new long[MAX_PLAYERS][MAX_HAND_SIZE][NUM_CARD_TYPES + 1];
+    // Keys for what the owner of a slot knows about its colour (or nothing, the last one) and value.
+    private static final long[][][] KNOWN_COLOUR_KEYS = new long[MAX_PLAYERS][MAX_HAND_SIZE][COLOURS.length + 1];
+    private static final long[][][] KNOWN_VALUE_KEYS = new long[MAX_PLAYERS][MAX_HAND_SIZE][6];
+    private static final long[][] TABLE_KEYS = new long[COLOURS.length][6];
+    private static final long[][] DISCARD_KEYS = new long[NUM_CARD_TYPES][MAX_COPIES + 1];
+    private static final long[] INFO_KEYS = new long[MAX_INFO_TOKENS + 1];
+    private static final long[] LIVES_KEYS = new long[MAX_LIVES + 1];
+    private static final long[] MOVES_LEFT_KEYS = new long[MAX_MOVES_LEFT + 1];
+    private static final long[] TO_MOVE_KEYS = new long[MAX_PLAYERS];
+    private static final long[] PLAYER_COUNT_KEYS = new long[MAX_PLAYERS + 1];
+    // Keys of the abstraction used by hashInformationState: a card of a partner that can be played now, and the turn.
+    private static final long[][] PLAYABLE_KEYS = new long[MAX_PLAYERS][MAX_HAND_SIZE];
+    private static final long[] TURN_KEYS = new long[MAX_TURN + 1];
+
+    static {
+        Random random = new Random(SEED);
+        fill(HAND_KEYS, random);
+        fill(KNOWN_COLOUR_KEYS, random);
+        fill(KNOWN_VALUE_KEYS, random);
+        fill(TABLE_KEYS, random);
+        fill(DISCARD_KEYS, random);
+        fill(INFO_KEYS, random);
+        fill(LIVES_KEYS, random);
+        fill(MOVES_LEFT_KEYS, random);
+        fill(TO_MOVE_KEYS, random);
+        fill(PLAYER_COUNT_KEYS, random);
+        fill(PLAYABLE_KEYS, random);
+        fill(TURN_KEYS, random);
+    }
+
+    private ZobristHash() {
+    }
+
+    /**
+     * Calculate the hash of a state from scratch.
+     *
+     * @param state    the state to hash
+     * @param toMoveID the player that moves next in the state
+     * @return the hash of the state
+     */
+    public static long hash(GameState state, int toMoveID) {
+        return hash(state, toMoveID, NO_OBSERVER);
+    }
+
+    /**
+     * Calculate the hash of a state from scratch, as seen by an observer whose own cards are left out.
+     *
+     * @param state      the state to hash
+     * @param toMoveID   the player that moves next in the state
+     * @param observerID the player whose view of the state is hashed
+     * @return the hash of the state as seen by the observer
+     */
+    public static long hash(GameState state, int toMoveID, int observerID) {
+        long hash = 0;
+        for (int player = 0; player < state.getPlayerCount(); player++) {
+            hash ^= hashHand(state, player, observerID);
+        }
+        for (int colour = 0; colour < COLOURS.length; colour++) {
+            hash ^= TABLE_KEYS[colour][state.getTableValue(COLOURS[colour])];
+        }
+
+        hash ^= hashDiscards(state);
+        hash ^= INFO_KEYS[state.getInfomation()];
+        hash ^= LIVES_KEYS[state.getLives()];
+        hash ^= getMovesLeftKey(state);
+        hash ^= TO_MOVE_KEYS[toMoveID];
+        return hash;
+    }
+
+    /**
+     * Calculate the hash of an abstraction of the state as seen by an agent, which generalises across deals: the
+     * table, the discard pile, the tokens, the moves left, the turn, what every player knows about each of its cards
+     * and, of the cards of the other players, only which ones can be played now. The hands are hashed by their
+     * position relative to the agent, so that the same situation gets the same hash whatever seat the agent sits
+     * in. Unlike the keys used during a search, this hash is meant to be stored across runs, which the fixed seed
+     * allows.
+     *
+     * @param state   the state to hash
+     * @param agentID the agent whose view of the state is hashed
+     * @return the hash of the abstracted information state
+     */
+    public static long hashInformationState(GameState state, int agentID) {
+        int playerCount = state.getPlayerCount();
+        long hash = PLAYER_COUNT_KEYS[playerCount] ^ TURN_KEYS[Math.min(MAX_TURN, getTurn(state))];
+        for (int player = 0; player < playerCount; player++) {
+            int position = (player - agentID + playerCount) % playerCount;
+            Hand hand = state.getHand(player);
+            for (int slot = 0; slot < hand.getSize(); slot++) {
+                Card card = player == agentID ? null : hand.getCard(slot);
+                if (card != null && state.getTableValue(card.colour) + 1 == card.value) {
+                    hash ^= PLAYABLE_KEYS[position][slot];
+                }
+                CardColour knownColour = hand.getKnownColour(slot);
+                Integer knownValue = hand.getKnownValue(slot);
+                hash ^= KNOWN_COLOUR_KEYS[position][slot][knownColour == null ? COLOURS.length : knownColour.ordinal()];
+                hash ^= KNOWN_VALUE_KEYS[position][slot][knownValue == null ? 0 : knownValue];
+            }
+        }
+        for (int colour = 0; colour < COLOURS.length; colour++) {
+            hash ^= TABLE_KEYS[colour][state.getTableValue(COLOURS[colour])];
+        }
+
+        hash ^= hashDiscards(state);
+        hash ^= INFO_KEYS[state.getInfomation()];
+        hash ^= LIVES_KEYS[state.getLives()];
+        hash ^= getMovesLeftKey(state);
+        return hash;
+    }
+
+    /**
+     * Apply an action to a state and update its hash with the changes made by the action.
+     *
+     * @param hash     the hash of the state before the action
+     * @param action   the action to apply
+     * @param playerID the player performing the action
+     * @param state    the state, which is modified by the action
+     * @return the hash of the state after the action
+     */
+    public static long apply(long hash, Action action, int playerID, GameState state) {
+        return apply(hash, action, playerID, state, NO_OBSERVER);
+    }
+
+    /**
+     * Apply an action to a state and update its hash as seen by an observer, as calculated by hash.
+     *
+     * @param hash       the hash of the state before the action, as seen by the observer
+     * @param action     the action to apply
+     * @param playerID   the player performing the action
+     * @param state      the state, which is modified by the action
+     * @param observerID the player whose view of the state is hashed
+     * @return the hash of the state after the action, as seen by the observer
+     */
+    public static long apply(long hash, Action action, int playerID, GameState state, int observerID) {
+        int playerCount = state.getPlayerCount();
+
+        // Only the hand of the player who is told or who plays/discards changes.
+        int changedPlayer = playerID;
+        if (action instanceof TellColour) {
+            changedPlayer = ((TellColour) action).player;
+        } else if (action instanceof TellValue) {
+            changedPlayer = ((TellValue) action).player;
+        }
+
+        // Keys only touched by plays and discards.
+        boolean movesCard = action instanceof PlayCard || action instanceof DiscardCard;
+        int changedType = -1;
+        int changedDiscards = 0;
+        int changedTable = 0;
+        if (movesCard) {
+            int slot = action instanceof PlayCard ? ((PlayCard) action).slot : ((DiscardCard) action).slot;
+            Card card = state.getHand(playerID).getCard(slot);
+            changedType = getCardType(card);
+            changedDiscards = countDiscards(state, card);
+            changedTable = state.getTableValue(card.colour);
+        }
+
+        hash ^= hashHand(state, changedPlayer, observerID);
+        hash ^= INFO_KEYS[state.getInfomation()];
+        hash ^= LIVES_KEYS[state.getLives()];
+        hash ^= getMovesLeftKey(state);
+        hash ^= TO_MOVE_KEYS[playerID];
+        if (movesCard) {
+            hash ^= DISCARD_KEYS[changedType][changedDiscards];
+            hash ^= TABLE_KEYS[changedType / 5][changedTable];
+        }
+
+        action.apply(playerID, state);
+
+        hash ^= hashHand(state, changedPlayer, observerID);
+        hash ^= INFO_KEYS[state.getInfomation()];
+        hash ^= LIVES_KEYS[state.getLives()];
+        hash ^= getMovesLeftKey(state);
+        hash ^= TO_MOVE_KEYS[(playerID + 1) % playerCount];
+        if (movesCard) {
+            hash ^= DISCARD_KEYS[changedType][Math.min(MAX_COPIES, countDiscards(state, changedType))];
+            hash ^= TABLE_KEYS[changedType / 5][state.getTableValue(COLOURS[changedType / 5])];
+        }
+        return hash;
+    }
+
+    /**
+     * Get the index of a card among the 25 types of cards (colour major, value minor).
+     *
+     * @param card the card
+     * @return the type of the card, between 0 and 24
+     */
+    public static int getCardType(Card card) {
+        return card.colour.ordinal() * 5 + (card.value - 1);
+    }
+
+    private static int getTurn(GameState state) {
+        int turn = 0;
+        for (HistoryEntry entry : state.getActionHistory()) {
+            // Negative entries are game events that don't belong to any player.
+            if (entry.playerID >= 0) {
+                turn++;
+            }
+        }
+        return turn;
+    }
+
+    private static long getMovesLeftKey(GameState state) {
+        return MOVES_LEFT_KEYS[Math.max(0, Math.min(MAX_MOVES_LEFT, state.getMovesLeft()))];
+    }
+
+    private static long hashHand(GameState state, int player, int observerID) {
+        Hand hand = state.getHand(player);
+        long hash = 0;
+        for (int slot = 0; slot < hand.getSize(); slot++) {
+            CardColour knownColour = hand.getKnownColour(slot);
+            Integer knownValue = hand.getKnownValue(slot);
+            if (player != observerID) {
+                Card card = hand.getCard(slot);
+                hash ^= HAND_KEYS[player][slot][card == null ? NUM_CARD_TYPES : getCardType(card)];
+            }
+            hash ^= KNOWN_COLOUR_KEYS[player][slot][knownColour == null ? COLOURS.length : knownColour.ordinal()];
+            hash ^= KNOWN_VALUE_KEYS[player][slot][knownValue == null ? 0 : knownValue];
+        }
+        return hash;
+    }
+
+    private static long hashDiscards(GameState state) {
+        int[] discardCounts = new int[NUM_CARD_TYPES];
+        for (Card card : state.getDiscards()) {
+            discardCounts[getCardType(card)]++;
+        }
+        long hash = 0;
+        for (int type = 0; type < NUM_CARD_TYPES; type++) {
+            hash ^= DISCARD_KEYS[type][Math.min(MAX_COPIES, discardCounts[type])];
+        }
+        return hash;
+    }
+
+    private static int countDiscards(GameState state, Card card) {
+        return Math.min(MAX_COPIES, countDiscards(state, getCardType(card)));
+    }
+
+    private static int countDiscards(GameState state, int type) {
+        int count = 0;
+        for (Card discarded : state.getDiscards()) {
+            if (getCardType(discarded) == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void fill(long[] keys, Random random) {
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = random.nextLong();
+        }
+    }
+
+    private static void fill(long[][] keys, Random random) {
+        for (long[] row : keys) {
+            fill(row, random);
+        }
+    }
+
+    private static void fill(long[][][] keys, Random random) {
+        for (long[][] table : keys) {
+            fill(table, random);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.fossgalaxy.games.fireworks.ai;
+
+import com.fossgalaxy.games.fireworks.GameRunner;
+import com.fossgalaxy.games.fireworks.GameStats;
+import com.fossgalaxy.games.fireworks.utils.AgentUtils;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Plays many games between our agent and a set of opponents on a pool of threads.
+ *
+ * Every game is derived from the base seed and its index only: the deck ordering, the seat of our
+ * agent and (when mixing opponents) the opponents at the table, so a tournament gives the same
+ * games whatever the number of threads. Agents are either built for every game, or pooled: a single
+ * instance of each agent plays all its games, which suits agents that learn across games. Pooled
+ * agents play the games one at a time and in order, so what they learn does not depend on how the
+ * games would be scheduled on the threads.
+ *
+ * The results hold the score of every game, the mean with its 95% confidence interval, and the
+ * same summary for each opponent, and can be written as CSV or JSON.
+ */
+public class Tournament {
+    public static final long DEFAULT_SEED = 42;
+
+    private static final double Z_95 = 1.96;
+
+    /**
+     * An agent taking part in the tournament, built by name or by any other means.
+     */
+    public static class Entrant {
+        public final String name;
+        public final Supplier<Agent> factory;
+
+        public Entrant(String name, Supplier<Agent> factory) {
+            this.name = name;
+            this.factory = factory;
+        }
+
+        /**
+         * @param agentName the name the agent is registered with in AgentUtils, also used as the name of the entrant
+         * @return the entrant building that agent
+         */
+        public static Entrant of(String agentName) {
+            return new Entrant(agentName, () -> AgentUtils.buildAgent(agentName));
+        }
+    }
+
+    /**
+     * The outcome of one game.
+     */
+    public static class GameResult {
+        public final int game;
+        public final long seed;
+        public final int seat;
+        public final List<String> opponents;
+        public final int score;
+
+        public GameResult(int game, long seed, int seat, List<String> opponents, int score) {
+            this.game = game;
+            this.seed = seed;
+            this.seat = seat;
+            this.opponents = opponents;
+            this.score = score;
+        }
+    }
+
+    /**
+     * Summary of a set of scores.
+     */
+    public static class Summary {
+        public final int games;
+        public final double mean;
+        public final double standardDeviation;
+        public final double confidenceInterval;
+        public final int min;
+        public final int max;
+
+        public Summary(List<Integer> scores) {
+            games = scores.size();
+            double sum = 0;
+            int lowest = Integer.MAX_VALUE;
+            int highest = Integer.MIN_VALUE;
+            for (int score : scores) {
+                sum += score;
+                lowest = Math.min(lowest, score);
+                highest = Math.max(highest, score);
+            }
+            mean = games == 0 ? 0 : sum / games;
+
+            double squares = 0;
+            for (int score : scores) {
+                squares += (score - mean) * (score - mean);
+            }
+            standardDeviation = games < 2 ? 0 : Math.sqrt(squares / (games - 1));
+            confidenceInterval = games == 0 ? 0 : Z_95 * standardDeviation / Math.sqrt(games);
+            min = games == 0 ? 0 : lowest;
+            max = games == 0 ? 0 : highest;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Avg: %f +/- %f (95%%), sd: %f, min: %d, max: %d, games: %d",
+                    mean, confidenceInterval, standardDeviation, min, max, games);
+        }
+    }
+
+    /**
+     * The outcome of a tournament.
+     */
+    public static class Results {
+        public final List<GameResult> games;
+
+        public Results(List<GameResult> games) {
+            this.games = games;
+        }
+
+        public Summary getSummary() {
+            List<Integer> scores = new ArrayList<>(games.size());
+            for (GameResult game : games) {
+                scores.add(game.score);
+            }
+            return new Summary(scores);
+        }
+
+        /**
+         * Summarise the games played with each opponent. A game counts once for every distinct opponent
+         * at the table.
+         *
+         * @return the summary of each opponent, by name
+         */
+        public Map<String, Summary> getOpponentSummaries() {
+            Map<String, List<Integer>> scores = new LinkedHashMap<>();
+            for (GameResult game : games) {
+                for (String opponent : new LinkedHashSet<>(game.opponents)) {
+                    scores.computeIfAbsent(opponent, key -> new ArrayList<>()).add(game.score);
+                }
+            }
+
+            Map<String, Summary> summaries = new LinkedHashMap<>();
+            for (Map.Entry<String, List<Integer>> entry : scores.entrySet()) {
+                summaries.put(entry.getKey(), new Summary(entry.getValue()));
+            }
+            return summaries;
+        }
+
+        /**
+         * Write one line per game: index, seed, seat of our agent, opponents and score.
+         *
+         * @param path the path of the CSV file
+         * @throws IOException if the file could not be written
+         */
+        public void writeCsv(String path) throws IOException {
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8))) {
+                writer.println("game,seed,seat,opponents,score");
+                for (GameResult game : games) {
+                    writer.println(String.format("%d,%d,%d,%s,%d", game.game, game.seed, game.seat,
+                            String.join(";", game.opponents), game.score));
+                }
+            }
+        }
+
+        /**
+         * Write the overall summary and the summary of each opponent.
+         *
+         * @param path the path of the JSON file
+         * @throws IOException if the file could not be written
+         */
+        public void writeJson(String path) throws IOException {
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8))) {
+                writer.println("{");
+                writer.println("  \"overall\": " + toJson(getSummary()) + ",");
+                writer.println("  \"opponents\": {");
+                List<String> lines = new ArrayList<>();
+                for (Map.Entry<String, Summary> entry : getOpponentSummaries().entrySet()) {
+                    lines.add("    \"" + escape(entry.getKey()) + "\": " + toJson(entry.getValue()));
+                }
+                writer.println(String.join(",\n", lines));
+                writer.println("  }");
+                writer.println("}");
+            }
+        }
+
+        /**
+         * Print the overall summary and the summary of each opponent.
+         */
+        public void print() {
+            System.out.println("Our agent: " + getSummary());
+            for (Map.Entry<String, Summary> entry : getOpponentSummaries().entrySet()) {
+                System.out.println("  with " + entry.getKey() + ": " + entry.getValue());
+            }
+        }
+
+        private static String toJson(Summary summary) {
+            return String.format(Locale.ROOT,
+                    "{\"games\": %d, \"mean\": %f, \"sd\": %f, \"ci95\": %f, \"min\": %d, \"max\": %d}",
+                    summary.games, summary.mean, summary.standardDeviation, summary.confidenceInterval,
+                    summary.min, summary.max);
+        }
+
+        private static String escape(String text) {
+            return text.replace("\\", "\\\\").replace("\"", "\\\"");
+        }
+    }
+
+    private final int playerCount;
+    private final long baseSeed;
+    private final int threads;
+    private boolean freshAgents = true;
+    private boolean mixedOpponents;
+
+    /**
+     * @param playerCount the number of players of every game
+     * @param baseSeed    the seed every game is derived from
+     * @param threads     the number of games played at the same time, when agents are built for every game; agents
+     *                    with a time budget compete for the cores, so more threads than free cores weakens them
+     */
+    public Tournament(int playerCount, long baseSeed, int threads) {
+        this.playerCount = playerCount;
+        this.baseSeed = baseSeed;
+        this.threads = threads;
+    }
+
+    /**
+     * Set whether agents are built for every game, or kept across all the games. Kept agents play the games on a
+     * single thread, whatever the number of threads of the tournament.
+     *
+     * @param freshAgents true to build new agents for every game
+     */
+    public void setFreshAgents(boolean freshAgents) {
+        this.freshAgents = freshAgents;
+    }
+
+    /**
+     * Set how the opponents of a game are chosen.
+     *
+     * @param mixedOpponents true to seat a random selection of distinct opponents at every game, false to fill the
+     *                       other seats with a single opponent, taking each opponent in turn
+     */
+    public void setMixedOpponents(boolean mixedOpponents) {
+        this.mixedOpponents = mixedOpponents;
+    }
+
+    /**
+     * Play the games of the tournament.
+     *
+     * @param ours      our agent
+     * @param opponents the agents our agent plays with
+     * @param numGames  the number of games
+     * @return the results of the games, in order
+     * @throws IllegalArgumentException if there are no opponents, or fewer distinct opponents than other seats when
+     *                                  mixing opponents
+     */
+    public Results run(Entrant ours, List<Entrant> opponents, int numGames) {
+        if (opponents.isEmpty()) {
+            throw new IllegalArgumentException("A tournament needs at least one opponent");
+        }
+        if (mixedOpponents && opponents.size() < playerCount - 1) {
+            throw new IllegalArgumentException("Mixing opponents needs at least " + (playerCount - 1)
+                    + " opponents to fill the other seats, but there are only " + opponents.size());
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(freshAgents ? threads : 1, runnable -> {
+            Thread thread = new Thread(runnable, "tournament");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, Agent> pool = new HashMap<>();
+
+        try {
+            List<Callable<GameResult>> tasks = new ArrayList<>(numGames);
+            for (int i = 0; i < numGames; i++) {
+                int game = i;
+                tasks.add(() -> playGame(game, ours, opponents, pool));
+            }
+
+            List<GameResult> results = new ArrayList<>(numGames);
+            for (Future<GameResult> future : executor.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+            return new Results(results);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the games", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("A game failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private GameResult playGame(int game, Entrant ours, List<Entrant> opponents, Map<String, Agent> pool) {
+        Random random = new Random(baseSeed * 1_000_003L + game);
+        long seed = random.nextLong();
+        int ourSeat = random.nextInt(playerCount);
+
+        List<Entrant> others = new ArrayList<>();
+        if (mixedOpponents) {
+            List<Entrant> order = new ArrayList<>(opponents);
+            Collections.shuffle(order, random);
+            others.addAll(order.subList(0, playerCount - 1));
+        } else {
+            for (int seat = 0; seat < playerCount - 1; seat++) {
+                others.add(opponents.get(game % opponents.size()));
+            }
+        }
+
+        GameRunner runner = new GameRunner("tournament-game", playerCount);
+        List<String> opponentNames = new ArrayList<>();
+        Map<String, Integer> occurrences = new HashMap<>();
+        int lastOther = 0;
+        for (int seat = 0; seat < playerCount; seat++) {
+            Entrant entrant = seat == ourSeat ? ours : others.get(lastOther++);
+            // Instances are pooled by name and occurrence, so that the same agent in two seats is two instances.
+            String key = seat == ourSeat ? "ours" : entrant.name + "#" + occurrences.merge(entrant.name, 1, Integer::sum);
+            Agent agent = freshAgents ? entrant.factory.get() : pool.computeIfAbsent(key, k -> entrant.factory.get());
+            runner.addNamedPlayer(entrant.name, new AgentPlayer(entrant.name, agent));
+            if (seat != ourSeat) {
+                opponentNames.add(entrant.name);
+            }
+        }
+
+        GameStats stats = runner.playGame(seed);
+        return new GameResult(game, seed, ourSeat, opponentNames, stats.score);
+    }
+}